@@ -0,0 +1,60 @@
+package com.github.mouse0w0.mike;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+public class Fixtures {
+    private static final int LIBRARY_INTERVAL = 10;
+    private static final int SOURCES_PER_TARGET = 2;
+
+    public static Path create(int targets) throws IOException {
+        Path root = Files.createTempDirectory("mike-bench-" + targets + "-");
+        Path include = Files.createDirectories(root.resolve("include"));
+        Files.write(include.resolve("common.hpp"), "#pragma once\nint common();\n".getBytes(StandardCharsets.UTF_8));
+
+        try (BufferedWriter writer = Files.newBufferedWriter(root.resolve(Project.MIKEFILE), StandardCharsets.UTF_8)) {
+            writer.write("CXXFLAGS = \"-Wall -O2\"\n\n");
+            for (int i = 0; i < targets; i++) {
+                String name = getName(i);
+                Path dir = Files.createDirectories(root.resolve("src").resolve(name));
+                for (int j = 0; j < SOURCES_PER_TARGET; j++) {
+                    Files.write(dir.resolve("file" + j + ".cpp"),
+                            ("#include \"common.hpp\"\nint " + name + "_" + j + "() { return common(); }\n").getBytes(StandardCharsets.UTF_8));
+                }
+                writer.write("[targets." + name + "]\n");
+                writer.write("sources = [\"src/" + name + "\"]\n");
+                writer.write("includes = [\"include\"]\n");
+                if (i % LIBRARY_INTERVAL == 0) {
+                    writer.write("staticLibrary = true\n");
+                } else {
+                    writer.write("libraries = [\"" + getName(i - i % LIBRARY_INTERVAL) + "\"]\n");
+                }
+                writer.write('\n');
+            }
+            for (int i = 1; i < targets; i += LIBRARY_INTERVAL) {
+                writer.write("[tests." + getName(i) + "]\n");
+                writer.write("target = \"" + getName(i) + "\"\n");
+                writer.write("expect = \"\"\n\n");
+            }
+        }
+        return root;
+    }
+
+    public static void delete(Path root) throws IOException {
+        if (root == null || Files.notExists(root)) return;
+        try (Stream<Path> stream = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) stream.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private static String getName(int index) {
+        return "t" + index;
+    }
+}
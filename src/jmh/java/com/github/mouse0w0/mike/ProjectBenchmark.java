@@ -0,0 +1,98 @@
+package com.github.mouse0w0.mike;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ProjectBenchmark {
+    @Param({"10", "100", "1000", "10000", "50000"})
+    public int targets;
+
+    private Path root;
+    private Project project;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        root = Fixtures.create(targets);
+        project = Project.parseProject(root);
+        project.getSources();
+        Generator.prepare(project);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixtures.delete(root);
+    }
+
+    @Benchmark
+    public Project parse() {
+        return Project.parseProject(root);
+    }
+
+    @Benchmark
+    public long makefile() {
+        return emit(new MakefileBackend());
+    }
+
+    @Benchmark
+    public long ninja() {
+        return emit(new NinjaBackend());
+    }
+
+    @Benchmark
+    public long generate() {
+        return emit(Generator.getBackend(project.getOptions())) + BuildGraph.create(project).getActions().size();
+    }
+
+    private long emit(Backend backend) {
+        CountingWriter counter = new CountingWriter();
+        PrintWriter writer = new PrintWriter(counter);
+        backend.generate(project, writer);
+        writer.flush();
+        return counter.count;
+    }
+
+    private static class CountingWriter extends Writer {
+        private long count;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void write(String s, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.mouse0w0.mike;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Action {
+    public static final String PRECOMPILE = "precompile";
+    public static final String COMPILE = "compile";
+    public static final String ARCHIVE = "archive";
+    public static final String LINK = "link";
+    public static final String INTERFACE = "interface";
+    public static final String DEPEND = "depend";
+    public static final String TEST = "test";
+
+    private final String category;
+    private final String command;
+    private final List<String> inputs;
+    private final List<String> outputs;
+    private final List<Action> dependencies = new ArrayList<>();
+    private final List<Action> dependents = new ArrayList<>();
+    private int priority = -1;
+
+    public Action(String category, String command, List<String> inputs, List<String> outputs) {
+        this.category = category;
+        this.command = command;
+        this.inputs = inputs;
+        this.outputs = outputs;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public List<String> getArguments() {
+        return split(command);
+    }
+
+    public List<String> getInputs() {
+        return inputs;
+    }
+
+    public List<String> getOutputs() {
+        return outputs;
+    }
+
+    public List<Action> getDependencies() {
+        return dependencies;
+    }
+
+    public List<Action> getDependents() {
+        return dependents;
+    }
+
+    public void dependsOn(Action action) {
+        dependencies.add(action);
+        action.dependents.add(this);
+    }
+
+    public static List<String> split(String command) {
+        List<String> arguments = new ArrayList<>();
+        StringBuilder word = null;
+        for (int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n') {
+                if (word != null) arguments.add(word.toString());
+                word = null;
+                continue;
+            }
+            if (c == '\\' && i + 1 < command.length() && command.charAt(i + 1) == '\n') {
+                i++;
+                continue;
+            }
+            if (word == null) {
+                if (c == '#' || c == '~') return null;
+                word = new StringBuilder();
+            }
+            if (c == '\'') {
+                int end = command.indexOf('\'', i + 1);
+                if (end < 0) return null;
+                word.append(command, i + 1, end);
+                i = end;
+            } else if (c == '"') {
+                while (true) {
+                    if (++i >= command.length()) return null;
+                    c = command.charAt(i);
+                    if (c == '"') break;
+                    if (c == '$' || c == '`') return null;
+                    if (c == '\\' && i + 1 < command.length() && "$`\"\\\n".indexOf(command.charAt(i + 1)) >= 0) {
+                        c = command.charAt(++i);
+                        if (c == '\n') continue;
+                    }
+                    word.append(c);
+                }
+            } else if (c == '\\') {
+                if (++i >= command.length()) return null;
+                word.append(command.charAt(i));
+            } else if ("|&;<>()$`*?[{".indexOf(c) >= 0) {
+                return null;
+            } else {
+                word.append(c);
+            }
+        }
+        if (word != null) arguments.add(word.toString());
+        return arguments;
+    }
+
+    public int getPriority() {
+        if (priority < 0) {
+            int max = 0;
+            for (Action dependent : dependents) {
+                max = Math.max(max, dependent.getPriority());
+            }
+            priority = max + 1;
+        }
+        return priority;
+    }
+}
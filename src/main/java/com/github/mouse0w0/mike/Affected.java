@@ -0,0 +1,108 @@
+package com.github.mouse0w0.mike;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public class Affected {
+    private final Project project;
+    private final String buildDir;
+    private final IncludeScanner scanner;
+
+    public Affected(Project project, String buildDir) {
+        this.project = project;
+        this.buildDir = buildDir;
+        this.scanner = new IncludeScanner(project, buildDir);
+    }
+
+    public List<String> getGoals(Collection<Path> changes) throws IOException {
+        Path root = project.getRoot().toAbsolutePath().normalize();
+        Set<String> files = new HashSet<>();
+        for (Path change : changes) {
+            Path file = change.toAbsolutePath().normalize();
+            if (!file.startsWith(root)) continue;
+            String path = root.relativize(file).toString().replace('\\', '/');
+            if (path.equals(buildDir) || path.startsWith(buildDir + "/")) continue;
+            files.add(path);
+        }
+        boolean config = files.contains(Project.MIKEFILE);
+        Set<Target> targets = config ? new LinkedHashSet<>(project.getTargets()) : getTargets(files);
+
+        List<String> goals = new ArrayList<>();
+        for (Target target : targets) {
+            goals.add(target.getName() + "/all");
+        }
+        List<Test> tests = new ArrayList<>();
+        for (Test test : project.getTests()) {
+            Target target = project.getTarget(test.getTarget());
+            if (config || target != null && targets.contains(target)) tests.add(test);
+        }
+        if (project.getOptions().getBackend().equals("ninja")) {
+            if (!tests.isEmpty()) goals.add("test");
+        } else {
+            for (Test test : tests) {
+                goals.add("test/" + test.getName());
+            }
+        }
+        return goals;
+    }
+
+    private Set<Target> getTargets(Set<String> files) throws IOException {
+        Set<Target> affected = new LinkedHashSet<>();
+        Sources sources = project.getSources();
+        for (Target target : project.getTargets()) {
+            if (isAffected(target, sources, files)) affected.add(target);
+        }
+        scanner.save();
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Target target : project.getTargets()) {
+                if (affected.contains(target)) continue;
+                for (Target dependency : project.getDependencies(target)) {
+                    if (affected.contains(dependency)) {
+                        affected.add(target);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        Set<Target> ordered = new LinkedHashSet<>();
+        for (Target target : project.getTargets()) {
+            if (affected.contains(target)) ordered.add(target);
+        }
+        return ordered;
+    }
+
+    private boolean isAffected(Target target, Sources sources, Set<String> files) {
+        if (files.isEmpty()) return false;
+        for (String file : sources.getSourceFiles(target)) {
+            if (files.contains(file)) return true;
+        }
+        for (String file : sources.getHeaderFiles(target)) {
+            if (files.contains(file)) return true;
+        }
+        Set<String> dirs = new HashSet<>(sources.getDirectories(target));
+        for (String file : files) {
+            if (!(Sources.isSourceFile(file) || Sources.isHeaderFile(file))) continue;
+            int index = file.lastIndexOf('/');
+            if (dirs.contains(index < 0 ? "" : file.substring(0, index))) return true;
+        }
+        for (List<String> dependencies : scanner.scan(target).values()) {
+            for (String file : dependencies) {
+                if (files.contains(file)) return true;
+            }
+        }
+        for (String file : scanner.scanPch(target)) {
+            if (files.contains(file)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,9 @@
+package com.github.mouse0w0.mike;
+
+import java.io.PrintWriter;
+
+public interface Backend {
+    String getFileName();
+
+    void generate(Project project, PrintWriter writer);
+}
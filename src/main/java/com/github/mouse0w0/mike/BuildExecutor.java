@@ -0,0 +1,185 @@
+package com.github.mouse0w0.mike;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BuildExecutor {
+    private final Path root;
+    private final int parallelism;
+    private final ObjectCache cache;
+    private final RemoteExecutor remote;
+    private final Trace trace;
+    private final PriorityBlockingQueue<Action> ready =
+            new PriorityBlockingQueue<>(64, Comparator.comparingInt(Action::getPriority).reversed());
+    private final Map<Action, AtomicInteger> remaining = new ConcurrentHashMap<>();
+    private final Map<Action, Boolean> executed = new ConcurrentHashMap<>();
+    private volatile boolean failed;
+    private ForkJoinPool pool;
+    private CountDownLatch latch;
+
+    public BuildExecutor(Path root, int parallelism, ObjectCache cache) {
+        this(root, parallelism, cache, null);
+    }
+
+    public BuildExecutor(Path root, int parallelism, ObjectCache cache, RemoteExecutor remote) {
+        this(root, parallelism, cache, remote, null);
+    }
+
+    public BuildExecutor(Path root, int parallelism, ObjectCache cache, RemoteExecutor remote, Trace trace) {
+        this.root = root;
+        this.parallelism = Math.max(1, parallelism);
+        this.cache = cache;
+        this.remote = remote;
+        this.trace = trace;
+    }
+
+    public boolean execute(List<Action> actions) throws InterruptedException {
+        if (actions.isEmpty()) return true;
+        pool = new ForkJoinPool(parallelism);
+        latch = new CountDownLatch(actions.size());
+        try {
+            for (Action action : actions) {
+                action.getPriority();
+                remaining.put(action, new AtomicInteger(action.getDependencies().size()));
+            }
+            for (Action action : actions) {
+                if (action.getDependencies().isEmpty()) {
+                    schedule(action);
+                }
+            }
+            latch.await();
+        } finally {
+            pool.shutdown();
+        }
+        return !failed;
+    }
+
+    private void schedule(Action action) {
+        ready.add(action);
+        pool.execute(this::runNext);
+    }
+
+    private void runNext() {
+        Action action = ready.poll();
+        if (action == null) return;
+        boolean ran = false;
+        try {
+            if (!failed && isOutdated(action)) {
+                ran = true;
+                if (!run(action)) {
+                    failed = true;
+                }
+            }
+        } finally {
+            executed.put(action, ran);
+            for (Action dependent : action.getDependents()) {
+                if (remaining.get(dependent).decrementAndGet() == 0) {
+                    schedule(dependent);
+                }
+            }
+            latch.countDown();
+        }
+    }
+
+    private boolean isOutdated(Action action) {
+        for (Action dependency : action.getDependencies()) {
+            if (executed.get(dependency) && !isRestat(dependency)) return true;
+        }
+        if (action.getOutputs().isEmpty()) return true;
+        try {
+            FileTime oldest = null;
+            for (String output : action.getOutputs()) {
+                Path file = root.resolve(output);
+                if (Files.notExists(file)) return true;
+                FileTime time = Files.getLastModifiedTime(file);
+                if (oldest == null || time.compareTo(oldest) < 0) oldest = time;
+            }
+            for (String input : action.getInputs()) {
+                Path file = root.resolve(input);
+                if (Files.notExists(file) || Files.getLastModifiedTime(file).compareTo(oldest) > 0) return true;
+            }
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static String getName(Action action) {
+        return action.getOutputs().isEmpty() ? action.getCommand() : action.getOutputs().get(0);
+    }
+
+    private static boolean isRestat(Action action) {
+        return Action.PRECOMPILE.equals(action.getCategory()) || Action.INTERFACE.equals(action.getCategory());
+    }
+
+    private boolean run(Action action) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int exitCode;
+        Trace.Span span = trace == null ? null : trace.begin(action.getCategory(), getName(action));
+        if (span != null) {
+            List<String> dependencies = new ArrayList<>();
+            for (Action dependency : action.getDependencies()) {
+                dependencies.add(getName(dependency));
+            }
+            span.setDependencies(dependencies);
+        }
+        try {
+            for (String file : action.getOutputs()) {
+                Path parent = root.resolve(file).getParent();
+                if (parent != null) Files.createDirectories(parent);
+            }
+            List<String> arguments = Action.COMPILE.equals(action.getCategory()) && (cache != null || remote != null)
+                    ? action.getArguments() : null;
+            if (arguments != null && cache != null) {
+                exitCode = cache.compile(arguments, action.getInputs(), remote, root, output);
+            } else if (arguments != null) {
+                exitCode = RemoteExecutor.compile(remote, arguments, action.getInputs(), root, output);
+            } else {
+                Process process = Trace.start(new ProcessBuilder("/bin/bash", "-c", action.getCommand())
+                        .directory(root.toFile())
+                        .redirectErrorStream(true));
+                process.getOutputStream().close();
+                try (InputStream in = process.getInputStream()) {
+                    byte[] buffer = new byte[8192];
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        output.write(buffer, 0, n);
+                    }
+                }
+                exitCode = process.waitFor();
+            }
+        } catch (IOException e) {
+            output.write('\n');
+            byte[] message = String.valueOf(e).getBytes(StandardCharsets.UTF_8);
+            output.write(message, 0, message.length);
+            exitCode = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exitCode = -1;
+        }
+        if (span != null) span.end(exitCode);
+        synchronized (System.out) {
+            System.out.println(action.getCommand());
+            System.out.print(output.toString());
+            if (exitCode != 0) {
+                System.out.println("Failed to " + action.getCategory() + " " + String.join(" ", action.getOutputs()) + " (exit code " + exitCode + ")");
+            }
+            System.out.flush();
+        }
+        return exitCode == 0;
+    }
+}
@@ -0,0 +1,173 @@
+package com.github.mouse0w0.mike;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BuildGraph {
+    private final Project project;
+    private final IncludeScanner scanner;
+    private final List<Action> actions = new ArrayList<>();
+    private final Map<String, Action> compiled = new HashMap<>();
+    private final Map<String, String> stamps = new LinkedHashMap<>();
+
+    private BuildGraph(Project project) {
+        this.project = project;
+        this.scanner = new IncludeScanner(project, project.getOptions().getBuildDir());
+    }
+
+    public Project getProject() {
+        return project;
+    }
+
+    public List<Action> getActions() {
+        return actions;
+    }
+
+    public static BuildGraph create(Project project) {
+        BuildGraph graph = new BuildGraph(project);
+        for (Target target : project.getTargets()) {
+            graph.addTarget(target, graph.scanner.scan(target), graph.scanner.scanPch(target));
+        }
+        graph.addLibraryDependencies();
+        return graph;
+    }
+
+    public void save() {
+        try {
+            scanner.save();
+            project.getSources().save();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void addTarget(Target target, Map<String, List<String>> dependencies, List<String> pchDependencies) {
+        Options options = project.getOptions();
+        String buildDir = project.getTargetDir(target);
+
+        StringBuilder includeFlags = new StringBuilder();
+        for (String include : project.getIncludes(target)) {
+            includeFlags.append(" -I").append(include);
+        }
+
+        Action pch = null;
+        String pchFlags = "";
+        if (!pchDependencies.isEmpty()) {
+            String header = pchDependencies.get(0);
+            String output = PrecompiledHeader.getOutput(header);
+            String stamp = buildDir + "/pch.flags";
+            String flags = options.getCxx() + " " + options.getCxxflags() + includeFlags;
+            stamps.put(stamp, flags.trim().replaceAll("\\s+", " ") + "\n");
+            List<String> inputs = new ArrayList<>(pchDependencies);
+            inputs.add(stamp);
+            String command = flags + " -x c++-header -o " + output + " -c " + header;
+            pch = add(new Action(Action.PRECOMPILE, command, inputs, Collections.singletonList(output)));
+            pchFlags = " -include " + header;
+        }
+
+        List<Action> compiles = new ArrayList<>();
+        List<String> objects = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : dependencies.entrySet()) {
+            String source = entry.getKey();
+            String object = project.getObject(target, source);
+            objects.add(object);
+            Action compile = compiled.get(object);
+            if (compile == null) {
+                List<String> inputs = entry.getValue();
+                String command = options.getCxx() + " " + options.getCxxflags() + includeFlags + pchFlags + " -o " + object + " -c " + source;
+                compile = add(new Action(Action.COMPILE, command, inputs, Collections.singletonList(object)));
+                if (pch != null) compile.dependsOn(pch);
+                compiled.put(object, compile);
+            }
+            compiles.add(compile);
+        }
+
+        String objectList = String.join(" ", objects);
+        StringBuilder libraries = new StringBuilder();
+        for (String library : project.getLinkLibraries(target)) {
+            libraries.append(" ").append(library);
+        }
+        List<String> inputs = new ArrayList<>(objects);
+        for (Target dependency : project.getTransitiveDependencies(target)) {
+            inputs.add(project.getLinkDependency(dependency));
+        }
+
+        if (target.isExecutable()) {
+            String output = project.getExecutable(target);
+            String command = options.getLd() + " " + options.getLdflags() + " -o " + output + " " + objectList + libraries;
+            addLink(Action.LINK, command, inputs, output, compiles);
+        }
+        if (target.isStaticLibrary()) {
+            String output = project.getStaticLibrary(target);
+            String command = options.getAr() + " " + options.getArflags() + " " + output + " " + objectList;
+            addLink(Action.ARCHIVE, command, objects, output, compiles);
+        }
+        if (target.isSharedLibrary()) {
+            String output = project.getSharedLibrary(target);
+            String command = options.getCxx() + " " + options.getLdflags() + " -o " + output + " -shared " + objectList + libraries;
+            Action link = addLink(Action.LINK, command, inputs, output, compiles);
+            String stamp = project.getInterfaceStamp(target);
+            add(new Action(Action.INTERFACE, getInterfaceCommand(options.getNm(), output, stamp, "$"),
+                    Collections.singletonList(output), Collections.singletonList(stamp))).dependsOn(link);
+        }
+    }
+
+    public static String getInterfaceCommand(String nm, String input, String output, String dollar) {
+        String filter = "awk '{ print $1, $2, ($2 ~ /^[BbDdGgRrSsVv]$/ ? $4 : \"\") }'".replace("$", dollar);
+        return nm + " -D --defined-only -P " + input + " > " + output + ".nm"
+                + " && " + filter + " " + output + ".nm | LC_ALL=C sort > " + output + ".tmp"
+                + " && rm -f " + output + ".nm"
+                + " && if cmp -s " + output + ".tmp " + output + "; then rm -f " + output + ".tmp; else mv -f " + output + ".tmp " + output + "; fi";
+    }
+
+    private Action addLink(String category, String command, List<String> inputs, String output, List<Action> compiles) {
+        Action action = add(new Action(category, command, inputs, Collections.singletonList(output)));
+        for (Action compile : compiles) {
+            action.dependsOn(compile);
+        }
+        return action;
+    }
+
+    private void addLibraryDependencies() {
+        Map<String, Action> producers = new HashMap<>();
+        for (Action action : actions) {
+            if (Action.COMPILE.equals(action.getCategory())) continue;
+            for (String output : action.getOutputs()) {
+                producers.put(output, action);
+            }
+        }
+        for (Action action : actions) {
+            if (!Action.LINK.equals(action.getCategory())) continue;
+            for (String input : action.getInputs()) {
+                Action producer = producers.get(input);
+                if (producer != null) action.dependsOn(producer);
+            }
+        }
+    }
+
+    public void writeStamps() {
+        try {
+            for (Map.Entry<String, String> entry : stamps.entrySet()) {
+                Path file = project.getRoot().resolve(entry.getKey());
+                Files.createDirectories(file.getParent());
+                FileUtils.writeIfChanged(file, entry.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Action add(Action action) {
+        actions.add(action);
+        return action;
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.mouse0w0.mike;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class FileUtils {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    public static Path getTempFile(Path target) {
+        return target.resolveSibling("." + target.getFileName() + ".tmp");
+    }
+
+    public static Path getUniqueTempFile(Path target) {
+        return target.resolveSibling("." + target.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+    }
+
+    public static boolean replaceIfChanged(Path temp, Path target) throws IOException {
+        if (contentEquals(temp, target)) {
+            Files.delete(temp);
+            return false;
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    public static boolean writeIfChanged(Path file, byte[] content) throws IOException {
+        if (Files.exists(file) && Files.size(file) == content.length && Arrays.equals(Files.readAllBytes(file), content)) {
+            return false;
+        }
+        Path temp = getUniqueTempFile(file);
+        Files.write(temp, content);
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    public static boolean contentEquals(Path a, Path b) throws IOException {
+        if (Files.notExists(a) || Files.notExists(b) || Files.size(a) != Files.size(b)) return false;
+        try (InputStream ina = Files.newInputStream(a); InputStream inb = Files.newInputStream(b)) {
+            byte[] bufa = new byte[8192];
+            byte[] bufb = new byte[8192];
+            int n;
+            while ((n = ina.read(bufa)) > 0) {
+                int read = 0;
+                while (read < n) {
+                    int m = inb.read(bufb, read, n - read);
+                    if (m < 0) return false;
+                    read += m;
+                }
+                for (int i = 0; i < n; i++) {
+                    if (bufa[i] != bufb[i]) return false;
+                }
+            }
+            return inb.read() < 0;
+        }
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
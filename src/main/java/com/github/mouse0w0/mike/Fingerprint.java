@@ -0,0 +1,137 @@
+package com.github.mouse0w0.mike;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+public class Fingerprint {
+    public static final String FINGERPRINT_FILE = "mike.fingerprint";
+
+    public static String compute(Project project) {
+        try {
+            Path root = project.getRoot();
+            Hash digest = new Hash();
+            update(digest, String.valueOf(Mike.class.getPackage().getImplementationVersion()));
+            digest.update(Files.readAllBytes(root.resolve(Project.MIKEFILE)));
+
+            Options options = project.getOptions();
+            update(digest, options.getBuildDir());
+            update(digest, options.getInstallDir());
+            update(digest, options.getCxx());
+            update(digest, options.getCxxflags());
+            update(digest, options.getLd());
+            update(digest, options.getLdflags());
+            update(digest, options.getAr());
+            update(digest, options.getArflags());
+            update(digest, options.getNm());
+            update(digest, options.getBackend());
+            update(digest, options.getMike());
+            update(digest, options.getCacheDir());
+            update(digest, options.getCacheSize());
+            update(digest, options.getWorkers());
+            update(digest, String.valueOf(project.getProfile()));
+
+            Sources sources = project.getSources();
+            for (Target target : project.getTargets()) {
+                update(digest, target.getName());
+                for (String file : sources.getSourceFiles(target)) {
+                    update(digest, file);
+                }
+                for (String file : sources.getHeaderFiles(target)) {
+                    update(digest, file);
+                }
+                for (String dir : sources.getDirectories(target)) {
+                    update(digest, dir);
+                }
+                if (target.isUnity()) {
+                    for (String unit : UnityBuild.getCompileUnits(project, target)) {
+                        update(digest, unit);
+                    }
+                }
+                if (target.getPch() != null) {
+                    update(digest, target.getPch());
+                    for (Project variant : project.getVariants()) {
+                        update(digest, PrecompiledHeader.getHeader(variant, target));
+                    }
+                }
+            }
+            return digest.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static boolean isUpToDate(Project project, String fingerprint) {
+        Path file = getFile(project);
+        if (Files.notExists(file) || Files.notExists(Generator.getOutput(project))
+                || Files.notExists(project.getRoot().resolve(Generator.COMPILE_COMMANDS))) return false;
+        try {
+            return ("# " + fingerprint).equals(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static void save(Project project, String fingerprint) {
+        try {
+            Path file = getFile(project);
+            Files.createDirectories(file.getParent());
+            Files.write(file, ("# " + fingerprint + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void touch(Project project) {
+        try {
+            Files.setLastModifiedTime(getFile(project), FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Path getFile(Project project) {
+        return project.getRoot().resolve(project.getOptions().getBuildDir()).resolve(FINGERPRINT_FILE);
+    }
+
+    private static void update(Hash digest, String s) {
+        digest.update(String.valueOf(s).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static class Hash {
+        private long a = 0xcbf29ce484222325L;
+        private long b = 0x6a09e667f3bcc909L;
+
+        private void update(byte[] bytes) {
+            for (byte value : bytes) {
+                update(value);
+            }
+        }
+
+        private void update(byte value) {
+            a = (a ^ (value & 0xff)) * 0x100000001b3L;
+            b = (b + (value & 0xff) + 1) * 0x9e3779b97f4a7c15L;
+        }
+
+        private String finish() {
+            byte[] bytes = new byte[16];
+            long x = mix(a);
+            long y = mix(b ^ x);
+            for (int i = 0; i < 8; i++) {
+                bytes[i] = (byte) (x >>> (56 - i * 8));
+                bytes[i + 8] = (byte) (y >>> (56 - i * 8));
+            }
+            return FileUtils.toHex(bytes);
+        }
+
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
+        }
+    }
+}
@@ -1,371 +1,222 @@
 package com.github.mouse0w0.mike;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringWriter;
 import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 public class Generator {
-    public static final String MAKEFILE = "Makefile";
+    public static final String MAKEFILE = MakefileBackend.MAKEFILE;
+    public static final String COMPILE_COMMANDS = "compile_commands.json";
+    public static final String PLAN_FILE = "mike.plan.json";
+    public static final String PLAN_INPUTS_FILE = "mike.plan.inputs";
+
+    private static final int WRITE_BUFFER = 1 << 16;
+
+    public static Backend getBackend(Options options) {
+        switch (options.getBackend()) {
+            case "make":
+                return new MakefileBackend();
+            case "ninja":
+                return new NinjaBackend();
+            default:
+                throw new IllegalArgumentException("Unknown backend " + options.getBackend());
+        }
+    }
+
+    public static Path getOutput(Project project) {
+        return project.getRoot().resolve(getBackend(project.getOptions()).getFileName());
+    }
 
-    public static void generate(Project project) {
-        PrintWriter writer = null;
+    public static boolean generate(Project project) {
         try {
-            Path makefile = project.getRoot().resolve(MAKEFILE);
-            Files.deleteIfExists(makefile);
-            writer = new PrintWriter(Files.newBufferedWriter(makefile, StandardOpenOption.CREATE));
-            generateHeader(project, writer);
-            generateOptions(project, writer);
-            generateTasks(project, writer);
-            generateScripts(project, writer);
-            generateTargets(project, writer);
-            generateTests(project, writer);
-            generateHelp(project, writer);
+            Backend backend = getBackend(project.getOptions());
+            Path root = project.getRoot();
+            Path output = root.resolve(backend.getFileName());
+            boolean changed = write(output, writer -> generate(project, writer));
+            generatePlan(project, output, changed);
+            return changed;
         } catch (IOException e) {
             throw new UncheckedIOException(e);
-        } finally {
-            if (writer != null) {
-                writer.close();
-            }
         }
     }
 
-    private static void generateHeader(Project project, PrintWriter writer) {
-        writer.println("SHELL = /bin/bash");
-        writer.println();
-    }
-
-    private static void generateOptions(Project project, PrintWriter writer) {
-        Options options = project.getOptions();
-        writer.println("# --------------------------------------------------------------------------- ");
-        writer.println("# OPTIONS");
-        writer.println("# --------------------------------------------------------------------------- ");
-        writer.println("BUILD_DIR = " + options.getBuildDir());
-        writer.println("INSTALL_DIR = " + options.getInstallDir());
-        writer.println("CXX = " + options.getCxx());
-        writer.println("CXXFLAGS = " + options.getCxxflags());
-        writer.println("LD = " + options.getLd());
-        writer.println("LDFLAGS = " + options.getLdflags());
-        writer.println("AR = " + options.getAr());
-        writer.println("ARFLAGS = " + options.getArflags());
-        writer.println();
+    public static void generatePlan(Project project) {
+        try {
+            generatePlan(project, getOutput(project), false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
-    private static void generateTasks(Project project, PrintWriter writer) {
-        writer.println("# --------------------------------------------------------------------------- ");
-        writer.println("# TASKS");
-        writer.println("# --------------------------------------------------------------------------- ");
-
-        generateTask(project, writer, "all");
-        generateTask(project, writer, "clean");
-        generateTask(project, writer, "depend");
-        generateTask(project, writer, "install");
-        generateTask(project, writer, "uninstall");
-        generateTask(project, writer, "package");
+    private static void generatePlan(Project project, Path output, boolean changed) throws IOException {
+        Path root = project.getRoot();
+        Path commands = root.resolve(COMPILE_COMMANDS);
+        Path buildDir = root.resolve(project.getOptions().getBuildDir());
+        Path plan = buildDir.resolve(PLAN_FILE);
+        Path inputs = buildDir.resolve(PLAN_INPUTS_FILE);
+        if (!changed && isUpToDate(project, output, commands, plan, inputs)) return;
+        FileTime start = FileTime.fromMillis(System.currentTimeMillis());
+        BuildGraph graph = BuildGraph.create(project);
+        graph.save();
+        write(commands, writer -> generateCompileCommands(project, graph, writer));
+        Files.createDirectories(buildDir);
+        write(plan, writer -> generatePlan(project, graph, writer));
+        FileUtils.writeIfChanged(inputs, String.join("\n", getSourceInputs(project, graph)).getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(commands, start);
+        Files.setLastModifiedTime(plan, start);
     }
 
-    private static void generateTask(Project project, PrintWriter writer, String task) {
-        writer.print(task + ":");
-        for (Target target : project.getTargets()) {
-            writer.print(" " + target.getName() + "/" + task);
+    private static Set<String> getSourceInputs(Project project, BuildGraph graph) {
+        Set<String> outputs = new HashSet<>();
+        for (Action action : graph.getActions()) {
+            outputs.addAll(action.getOutputs());
         }
-        writer.println();
-        writer.println(".PHONY: " + task);
-        writer.println();
-    }
-
-    private static void generateScripts(Project project, PrintWriter writer) {
-        if (project.getScripts().isEmpty()) return;
-        writer.println("# --------------------------------------------------------------------------- ");
-        writer.println("# SCRIPTS");
-        writer.println("# --------------------------------------------------------------------------- ");
-        for (Script script : project.getScripts()) {
-            String task = "run/" + script.getName();
-            writer.println(task + ":");
-            for (String command : script.getCommands()) {
-                writer.print("\t");
-                writer.println(command);
+        String buildDir = project.getOptions().getBuildDir() + "/";
+        Set<String> inputs = new TreeSet<>();
+        for (Action action : graph.getActions()) {
+            for (String input : action.getInputs()) {
+                if (!outputs.contains(input) && !input.startsWith(buildDir)) inputs.add(input);
             }
-            writer.println(".PHONY: " + task);
-            writer.println();
         }
+        return inputs;
     }
 
-    private static void generateTargets(Project project, PrintWriter writer) {
-        Path root = project.getRoot();
-        for (Target target : project.getTargets()) {
-            String name = target.getName();
-            String _NAME = name.toUpperCase();
-            writer.println("# --------------------------------------------------------------------------- ");
-            writer.println("# TARGET " + _NAME);
-            writer.println("# --------------------------------------------------------------------------- ");
-
-            String varBuildDir = _NAME + "_BUILD_DIR";
-            writer.println(varBuildDir + " = $(BUILD_DIR)/" + name);
-
-            String varPackageDir = _NAME + "_PACKAGE_DIR";
-            writer.println(varPackageDir + "= $(" + varBuildDir + ")/_pack/" + name);
-
-            String varDepend = _NAME + "_DEPEND";
-            writer.println(varDepend + " = $(" + varBuildDir + ")/" + name + ".d");
-            writer.println("-include $(" + varDepend + ")");
-
-            String varSources = _NAME + "_SOURCES";
-            for (String source : target.getSources()) {
-                if (isCurrentPath(source)) {
-                    writer.println(varSources + " += $(wildcard *.c) $(wildcard *.cc) $(wildcard *.cpp)");
-                } else if (Files.isDirectory(root.resolve(source))) {
-                    if (source.endsWith("/")) source = source.substring(0, source.length() - 1);
-                    writer.println(varSources + " += $(wildcard " + source + "/*.c) $(wildcard " + source + "/*.cc) $(wildcard " + source + "/*.cpp)");
-                } else if (isSourceFile(source)) {
-                    writer.println(varSources + " += " + source);
-                }
-            }
-
-            String varHeaders = _NAME + "_HEADERS";
-            for (String source : target.getSources()) {
-                if (isCurrentPath(source)) {
-                    writer.println(varHeaders + " += $(wildcard *.h) $(wildcard *.hpp)");
-                } else if (Files.isDirectory(root.resolve(source))) {
-                    if (source.endsWith("/")) source = source.substring(0, source.length() - 1);
-                    writer.println(varHeaders + " += $(wildcard " + source + "*.h) $(wildcard " + source + "*.hpp)");
-                } else if (isHeaderFile(source)) {
-                    writer.println(varHeaders + " += " + source);
-                }
-            }
-
-            String varObjects = _NAME + "_OBJECTS";
-            writer.println(varObjects + " = $(patsubst %, $(" + varBuildDir + ")/%.o, $(" + varSources + "))");
-
-            String varIncludes = _NAME + "_INCLUDES";
-            writer.print(varIncludes + " =");
-            for (String include : target.getIncludes()) {
-                writer.print(" " + include);
-            }
-            writer.println();
-
-            String varIncludeFlags = _NAME + "_INCLUDE_FLAGS";
-            writer.println(varIncludeFlags + " = $(addprefix -I,$(" + varIncludes + "))");
-
-            String varLibraries = _NAME + "_LIBS";
-            writer.print(varLibraries + " =");
-            for (String library : target.getLibraries()) {
-                writer.print(" " + library);
-            }
-            writer.println();
-
-            String varExecutable = _NAME + "_EXECUTABLE";
-            String varStaticLibrary = _NAME + "_STATIC_LIB";
-            String varSharedLibrary = _NAME + "_SHARED_LIB";
-
-            String taskGenExecutable = name;
-            String taskGenStaticLibrary = name + ".a";
-            String taskGenSharedLibrary = name + ".so";
-
-            if (target.isExecutable()) {
-                writer.println();
-                writer.println(varExecutable + " = " + name);
-                writer.println(taskGenExecutable + ": $(" + varObjects + ")");
-                writer.println("\t$(LD) $(LDFLAGS) -o $@ $(" + varObjects + ") $(" + varLibraries + ")");
-            }
-
-            if (target.isStaticLibrary()) {
-                writer.println();
-                writer.println(varStaticLibrary + " = " + name + ".a");
-                writer.println(taskGenStaticLibrary + ": $(" + varObjects + ")");
-                writer.println("\t$(AR) $(ARFLAGS) $@ $(" + varObjects + ")");
-            }
-
-            if (target.isSharedLibrary()) {
-                writer.println();
-                writer.println(varSharedLibrary + " = " + name + ".so");
-                writer.println(taskGenSharedLibrary + ": $(" + varObjects + ")");
-                writer.println("\t$(CXX) $(LDFLAGS) -o $@ -shared $(" + varObjects + ")");
-            }
-
-            String taskAll = name + "/all";
-            writer.println();
-            writer.print(taskAll + ":");
-            if (target.isExecutable()) writer.print(" " + taskGenExecutable);
-            if (target.isStaticLibrary()) writer.print(" " + taskGenStaticLibrary);
-            if (target.isSharedLibrary()) writer.print(" " + taskGenSharedLibrary);
-            writer.println();
-            writer.println(".PHONY: " + taskAll);
-
-            String taskClean = name + "/clean";
-            writer.println();
-            writer.println(taskClean + ":");
-            writer.println("\t@echo Cleaning target " + name);
-            writer.println("\t@rm -rf $(" + varBuildDir + ")");
-            if (target.isExecutable()) writer.println("\t@rm -f $(" + varExecutable + ")");
-            if (target.isStaticLibrary()) writer.println("\t@rm -f $(" + varStaticLibrary + ")");
-            if (target.isSharedLibrary()) writer.println("\t@rm -f $(" + varSharedLibrary + ")");
-            writer.println("\t@echo Cleaned target");
-            writer.println(".PHONY: " + taskClean);
-
-            String taskDepend = name + "/depend";
-            writer.println();
-            writer.println(taskDepend + ":");
-            writer.println("\t@echo Analyzing target " + name);
-            writer.println("\t@mkdir -p $(dir $(" + varDepend + "))");
-            writer.println("\t@$(CXX) -MM $(" + varSources + ") > $(" + varDepend + ")");
-            writer.println("\t@sed -i -E \"s|^(.+?).o: ([^ ]+?)|$(" + varBuildDir + ")/\\2.o: \\2|g\" $(" + varDepend + ")");
-            writer.println("\t@echo Analyzed target");
-            writer.println(".PHONY: " + taskDepend);
-
-            String taskInstall = name + "/install";
-            writer.println();
-            writer.println(taskInstall + ": " + taskAll);
-            writer.println("\t@echo Installing target " + name);
-            writer.println("\t@if [ -n \"$(" + varHeaders + ")\" ]; then cp $(" + varHeaders + ") $(INSTALL_DIR)/include/; fi;");
-            if (target.isExecutable()) writer.println("\t@cp $(" + varExecutable + ") $(INSTALL_DIR)/bin/");
-            if (target.isStaticLibrary()) writer.println("\t@cp $(" + varStaticLibrary + ") $(INSTALL_DIR)/lib/");
-            if (target.isSharedLibrary()) writer.println("\t@cp $(" + varSharedLibrary + ") $(INSTALL_DIR)/lib/");
-            writer.println("\t@echo Installed target");
-            writer.println(".PHONY: " + taskInstall);
-
-            String taskUninstall = name + "/uninstall";
-            writer.println();
-            writer.println(taskUninstall + ":");
-            writer.println("\t@echo Uninstalling target " + name);
-            writer.print("\t@rm -f $(addprefix $(INSTALL_DIR)/include/,$(notdir $(" + varHeaders + ")))");
-            if (target.isExecutable()) writer.print(" $(INSTALL_DIR)/bin/$(" + varExecutable + ")");
-            if (target.isStaticLibrary()) writer.print(" $(INSTALL_DIR)/lib/$(" + varStaticLibrary + ")");
-            if (target.isSharedLibrary()) writer.print(" $(INSTALL_DIR)/lib/$(" + varSharedLibrary + ")");
-            writer.println();
-            writer.println("\t@echo Uninstalled target");
-            writer.println(".PHONY: " + taskUninstall);
-
-            String taskPackage = name + "/package";
-            writer.println();
-            writer.println(taskPackage + ": " + taskAll);
-            writer.println("\t@echo Packaging target " + name);
-            writer.println("\t@mkdir -p $(" + varPackageDir + ")/include/");
-            writer.println("\t@if [ -n \"$(" + varHeaders + ")\" ]; then cp $(" + varHeaders + ") $(" + varPackageDir + ")/include/; fi;");
-            if (target.isExecutable()) {
-                writer.println("\t@mkdir -p $(" + varPackageDir + ")/bin/");
-                writer.println("\t@cp $(" + varExecutable + ") $(" + varPackageDir + ")/bin/");
-            }
-            if (target.isStaticLibrary() || target.isSharedLibrary())
-                writer.println("\t@mkdir -p $(" + varPackageDir + ")/lib/");
-            if (target.isStaticLibrary())
-                writer.println("\t@cp $(" + varStaticLibrary + ") $(" + varPackageDir + ")/lib/");
-            if (target.isSharedLibrary())
-                writer.println("\t@cp $(" + varSharedLibrary + ") $(" + varPackageDir + ")/lib/");
-            writer.println("\t@tar zcf " + name + ".tar.gz -C $(" + varPackageDir + ")/../ " + name);
-            writer.println("\t@echo Packaged target");
-            writer.println(".PHONY: " + taskPackage);
+    public static void prepare(Project project) {
+        project.getUnityBuild().write();
+        PrecompiledHeader.write(project);
+    }
 
-            writer.println();
-            writer.println("$(" + varBuildDir + ")/%.o: %");
-            writer.println("\t@mkdir -p $(dir $@)");
-            writer.println("\t$(CXX) $(CXXFLAGS) $(" + varIncludeFlags + ") -o $@ -c $<");
-            writer.println();
-        }
+    public static void generate(Project project, Writer writer) throws IOException {
+        Backend backend = getBackend(project.getOptions());
+        PrintWriter printWriter = new PrintWriter(writer);
+        backend.generate(project, printWriter);
+        printWriter.flush();
+        if (printWriter.checkError()) throw new IOException("Cannot write " + backend.getFileName());
     }
 
-    private static void generateTests(Project project, PrintWriter writer) {
-        if (project.getTests().isEmpty()) return;
-        writer.println("# --------------------------------------------------------------------------- ");
-        writer.println("# TESTS");
-        writer.println("# --------------------------------------------------------------------------- ");
-        String testTask = "test";
-        writer.println(testTask + ": TEST_TOTAL = " + project.getTests().size());
-        writer.println(testTask + ":");
-        writer.println("\t@echo Test project $(shell pwd)");
-        int testCurrent = 1;
-        for (Test test : project.getTests()) {
-            String task = "test/" + test.getName();
-            writer.println("\t@$(MAKE) --no-print-directory " + task + " TEST_TOTAL=$(TEST_TOTAL) TEST_CURRENT=" + testCurrent++);
-        }
-        writer.println("\t@echo Test project finished");
-        writer.println(".PHONY: " + testTask);
-        writer.println();
+    public static void generate(Project project, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER);
+        generate(project, writer);
+        writer.flush();
+    }
 
-        writer.println("TEST_TOTAL ?= 1");
-        writer.println("TEST_CURRENT ?= 1");
-        writer.println();
+    public static void generateCompileCommands(Project project, Writer writer) throws IOException {
+        generateCompileCommands(project, BuildGraph.create(project), writer);
+        writer.flush();
+    }
 
-        for (Test test : project.getTests()) {
-            String task = "test/" + test.getName();
-            writer.println(task + ": TEST_NAME = " + test.getName());
-            writer.println(task + ": TEST_TARGET = " + test.getTarget());
-            if (isNotEmpty(test.getArgs())) {
-                writer.println(task + ": TEST_ARGS = " + test.getArgs());
-            }
-            if (isNotEmpty(test.getInput())) {
-                writer.println(task + ": TEST_INPUT = " + test.getInput());
-            }
-            writer.println(task + ": TEST_EXPECT = " + test.getExpect());
-            writer.println(task + ": " + test.getTarget());
-            writer.println("\t@echo -e \"\\tStart $(TEST_CURRENT)\\t: $(TEST_NAME)\"");
-            writer.print("\t$(eval TEST_OUTPUT=$(shell ./$(TEST_TARGET)");
-            if (isNotEmpty(test.getArgs())) {
-                writer.print(" $(TEST_ARGS)");
-            }
-            if (isNotEmpty(test.getInput())) {
-                writer.print(" <<< " + test.getInput());
-            }
-            writer.println("))");
-            writer.println("\t$(eval TEST_RESULT=$(shell if [ \"$(TEST_OUTPUT)\" == \"$(TEST_EXPECT)\" ]; then echo Passed; else echo Failed; fi;))");
-            writer.println("\t@echo -e \"$(TEST_CURRENT)/$(TEST_TOTAL)\\tTest  $(TEST_CURRENT)\\t: $(TEST_NAME)\\t................   $(TEST_RESULT)\"");
-            writer.println(".PHONY: " + task);
-            writer.println();
+    private static void generateCompileCommands(Project project, BuildGraph graph, Writer writer) throws IOException {
+        JsonWriter json = new JsonWriter(writer);
+        String directory = project.getRoot().toAbsolutePath().normalize().toString();
+        json.beginArray();
+        for (Action action : graph.getActions()) {
+            if (!Action.COMPILE.equals(action.getCategory())) continue;
+            json.beginObject();
+            json.name("directory").value(directory);
+            json.name("command").value(action.getCommand());
+            json.name("file").value(action.getInputs().get(0));
+            json.name("output").value(action.getOutputs().get(0));
+            json.endObject();
         }
+        json.endArray();
     }
 
-    private static void generateHelp(Project project, PrintWriter writer) {
-        String helpTask = "help";
-        writer.println("# --------------------------------------------------------------------------- ");
-        writer.println("# HELP");
-        writer.println("# --------------------------------------------------------------------------- ");
-        writer.println(helpTask + ":");
-        writer.println("\t@echo \"The following are some of the valid targets for this Makefile:\"");
-        writer.println("\t@echo \"... all (the default if no target is provided)\"");
-        writer.println("\t@echo \"... clean\"");
-        writer.println("\t@echo \"... depend\"");
-        writer.println("\t@echo \"... install\"");
-        writer.println("\t@echo \"... uninstall\"");
-        writer.println("\t@echo \"... package\"");
-        if (!project.getTests().isEmpty()) {
-            writer.println("\t@echo \"... test\"");
+    private static boolean isUpToDate(Project project, Path output, Path commands, Path plan, Path inputs) throws IOException {
+        if (Files.notExists(output) || Files.notExists(commands) || Files.notExists(plan) || Files.notExists(inputs)) return false;
+        FileTime modified = Files.getLastModifiedTime(output);
+        FileTime planned = Files.getLastModifiedTime(plan);
+        if (Files.getLastModifiedTime(commands).compareTo(modified) < 0 || planned.compareTo(modified) < 0) return false;
+        for (String input : Files.readAllLines(inputs, StandardCharsets.UTF_8)) {
+            if (input.isEmpty()) continue;
+            Path file = project.getRoot().resolve(input);
+            if (Files.notExists(file) || Files.getLastModifiedTime(file).compareTo(planned) > 0) return false;
         }
-        for (Script script : project.getScripts()) {
-            writer.println("\t@echo \"... run/" + script.getName() + "\"");
+        StringWriter header = new StringWriter();
+        writePlanHeader(project, new JsonWriter(header));
+        char[] expected = (header + ",").toCharArray();
+        char[] actual = new char[expected.length];
+        try (Reader reader = Files.newBufferedReader(plan, StandardCharsets.UTF_8)) {
+            int length = 0;
+            for (int n; length < actual.length && (n = reader.read(actual, length, actual.length - length)) > 0; ) {
+                length += n;
+            }
+            return length == actual.length && Arrays.equals(expected, actual);
         }
-        for (Target target : project.getTargets()) {
-            if (target.isExecutable()) {
-                writer.println("\t@echo \"... " + target.getName() + "\"");
-            }
-            if (target.isStaticLibrary()) {
-                writer.println("\t@echo \"... " + target.getName() + ".a\"");
-            }
-            if (target.isSharedLibrary()) {
-                writer.println("\t@echo \"... " + target.getName() + ".so\"");
-            }
-        }
-        writer.println(".PHONY: " + helpTask);
     }
 
-    private static boolean isEmpty(String s) {
-        return s == null || s.isEmpty();
+    private static void writePlanHeader(Project project, JsonWriter json) throws IOException {
+        json.beginObject();
+        json.name("root").value(project.getRoot().toAbsolutePath().normalize().toString());
+        json.name("profile").value(project.getProfile());
     }
 
-    private static boolean isNotEmpty(String s) {
-        return s != null && !s.isEmpty();
+    private static void generatePlan(Project project, BuildGraph graph, Writer writer) throws IOException {
+        Map<Action, Integer> ids = new IdentityHashMap<>();
+        for (Action action : graph.getActions()) {
+            ids.put(action, ids.size());
+        }
+        JsonWriter json = new JsonWriter(writer);
+        writePlanHeader(project, json);
+        json.name("actions").beginArray();
+        for (Action action : graph.getActions()) {
+            json.beginObject();
+            json.name("id").value(ids.get(action));
+            json.name("category").value(action.getCategory());
+            json.name("command").value(action.getCommand());
+            writeArray(json.name("inputs"), action.getInputs());
+            writeArray(json.name("outputs"), action.getOutputs());
+            json.name("dependencies").beginArray();
+            for (Action dependency : action.getDependencies()) {
+                json.value(ids.get(dependency));
+            }
+            json.endArray();
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
     }
 
-    private static boolean isCurrentPath(String path) {
-        return path.isEmpty() || path.equals(".") || path.equals("./");
+    private static void writeArray(JsonWriter json, List<String> values) throws IOException {
+        json.beginArray();
+        for (String value : values) {
+            json.value(value);
+        }
+        json.endArray();
     }
 
-    private static boolean isSourceFile(String file) {
-        return file.endsWith(".c") || file.endsWith(".cc") || file.endsWith(".cpp");
+    private static boolean write(Path file, Content content) throws IOException {
+        Path temp = FileUtils.getTempFile(file);
+        try (Writer writer = new BufferedWriter(Channels.newWriter(FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), StandardCharsets.UTF_8.newEncoder(), WRITE_BUFFER), WRITE_BUFFER)) {
+            content.write(writer);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return FileUtils.replaceIfChanged(temp, file);
     }
 
-    private static boolean isHeaderFile(String file) {
-        return file.endsWith(".h") || file.endsWith(".hpp");
+    private interface Content {
+        void write(Writer writer) throws IOException;
     }
 }
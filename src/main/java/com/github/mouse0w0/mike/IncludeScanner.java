@@ -0,0 +1,286 @@
+package com.github.mouse0w0.mike;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class IncludeScanner {
+    public static final String CACHE_FILE = "mike.includes";
+
+    private static final Pattern INCLUDE = Pattern.compile("^\\s*#\\s*include\\s*([<\"])([^>\"]+)[>\"]", Pattern.MULTILINE);
+
+    private final Path root;
+    private final Project project;
+    private final Sources sources;
+    private final Path cacheFile;
+    private final Map<Path, String> generated = new HashMap<>();
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    public IncludeScanner(Project project, String buildDir) {
+        this.root = project.getRoot().toAbsolutePath().normalize();
+        this.project = project;
+        this.sources = project.getSources();
+        this.cacheFile = this.root.resolve(buildDir).resolve(CACHE_FILE);
+        for (Target target : project.getTargets()) {
+            if (target.getPch() == null) continue;
+            generated.put(this.root.resolve(PrecompiledHeader.getHeader(project, target)).normalize(),
+                    PrecompiledHeader.getContent(project, target));
+        }
+        load();
+    }
+
+    public IncludeScanner(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+        this.project = null;
+        this.sources = null;
+        this.cacheFile = null;
+    }
+
+    public Map<String, List<String>> scan(Target target) {
+        List<Path> includeDirs = getIncludeDirs(target);
+        Map<String, Optional<Path>> resolved = new ConcurrentHashMap<>();
+        Map<String, List<String>> dependencies = new ConcurrentHashMap<>();
+        String pch = PrecompiledHeader.getHeader(project, target);
+        List<String> sourceFiles = UnityBuild.getCompileUnits(project, target);
+        sourceFiles.parallelStream().forEach(source ->
+                dependencies.put(source, collect(source, pch, includeDirs, resolved)));
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        for (String file : sourceFiles) {
+            result.put(file, dependencies.get(file));
+        }
+        return result;
+    }
+
+    public List<String> scanPch(Target target) {
+        String pch = PrecompiledHeader.getHeader(project, target);
+        if (pch == null) return Collections.emptyList();
+        return collect(pch, null, getIncludeDirs(target), new ConcurrentHashMap<>());
+    }
+
+    public List<String> scan(List<String> command) {
+        int compileIndex = command.indexOf("-c");
+        if (compileIndex < 0 || compileIndex + 1 >= command.size()) return Collections.emptyList();
+        List<Path> includeDirs = new ArrayList<>();
+        String pch = null;
+        for (int i = 0; i < command.size(); i++) {
+            String argument = command.get(i);
+            if (argument.equals("-I") && i + 1 < command.size()) {
+                includeDirs.add(root.resolve(command.get(++i)).normalize());
+            } else if (argument.startsWith("-I")) {
+                includeDirs.add(root.resolve(argument.substring(2)).normalize());
+            } else if (argument.equals("-include") && i + 1 < command.size()) {
+                pch = command.get(++i);
+            }
+        }
+        return collect(command.get(compileIndex + 1), pch, includeDirs, new ConcurrentHashMap<>());
+    }
+
+    private List<String> collect(String source, String pch, List<Path> includeDirs, Map<String, Optional<Path>> resolved) {
+        Set<Path> visited = new LinkedHashSet<>();
+        Deque<Path> queue = new ArrayDeque<>();
+        for (String start : pch == null ? Collections.singletonList(source) : Arrays.asList(source, pch)) {
+            Path file = root.resolve(start).normalize();
+            queue.add(file);
+            visited.add(file);
+        }
+        while (!queue.isEmpty()) {
+            Path current = queue.poll();
+            for (String directive : getEntry(current).directives) {
+                Optional<Path> header = resolved.computeIfAbsent(current.getParent() + "\0" + directive,
+                        key -> resolve(current.getParent(), directive, includeDirs));
+                if (header.isPresent() && visited.add(header.get())) {
+                    queue.add(header.get());
+                }
+            }
+        }
+        List<String> files = new ArrayList<>();
+        for (Path path : visited) {
+            files.add(relativize(path));
+        }
+        Collections.sort(files.subList(1, files.size()));
+        return files;
+    }
+
+    private List<Path> getIncludeDirs(Target target) {
+        List<Path> includeDirs = new ArrayList<>();
+        for (String include : project.getIncludes(target)) {
+            includeDirs.add(root.resolve(include).normalize());
+        }
+        return includeDirs;
+    }
+
+    public void writeDepend(Target target, String buildDir, Map<String, List<String>> dependencies) throws IOException {
+        String profileDir = project.getProfile() == null ? buildDir : buildDir + "/" + project.getProfile();
+        String objectDir = profileDir + "/" + target.getName();
+        Path file = root.resolve(objectDir).resolve(target.getName() + ".d");
+        Files.createDirectories(file.getParent());
+        Set<String> inputs = new LinkedHashSet<>();
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, List<String>> entry : dependencies.entrySet()) {
+            String pool = project.getObjectPool().getPool(target, entry.getKey());
+            builder.append(pool != null ? profileDir + "/" + ObjectPool.POOL_DIR + "/" + pool : objectDir)
+                    .append('/').append(entry.getKey()).append(".o:");
+            for (String dependency : entry.getValue()) {
+                builder.append(' ').append(dependency);
+            }
+            builder.append('\n');
+            inputs.addAll(entry.getValue());
+        }
+        List<String> pchDependencies = scanPch(target);
+        if (!pchDependencies.isEmpty()) {
+            builder.append(PrecompiledHeader.getOutput(pchDependencies.get(0))).append(':');
+            for (String dependency : pchDependencies) {
+                builder.append(' ').append(dependency);
+            }
+            builder.append('\n');
+            inputs.addAll(pchDependencies);
+        }
+        for (String dir : sources.getDirectories(target)) {
+            if (!Sources.isCurrentPath(dir)) inputs.add(dir);
+        }
+        builder.append(objectDir).append('/').append(target.getName()).append(".d:");
+        for (String input : inputs) {
+            builder.append(' ').append(input);
+        }
+        builder.append('\n');
+        builder.append("\t@$(call TRACE_CMD,depend)$(MIKE) depend --build-dir=").append(buildDir);
+        if (project.getProfile() != null) builder.append(" --profile=").append(project.getProfile());
+        builder.append(' ').append(target.getName()).append('\n');
+
+        if (!FileUtils.writeIfChanged(file, builder.toString().getBytes(StandardCharsets.UTF_8))) {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+    }
+
+    public void save() throws IOException {
+        if (!dirty || cacheFile == null) return;
+        Files.createDirectories(cacheFile.getParent());
+        Path temp = FileUtils.getUniqueTempFile(cacheFile);
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<Path, Entry> entry : entries.entrySet()) {
+                Entry value = entry.getValue();
+                writer.write(relativize(entry.getKey()));
+                writer.write('\t');
+                writer.write(Long.toString(value.modified));
+                writer.write('\t');
+                writer.write(Long.toString(value.size));
+                writer.write('\t');
+                writer.write(value.hash);
+                for (String directive : value.directives) {
+                    writer.write('\t');
+                    writer.write(directive);
+                }
+                writer.write('\n');
+            }
+        }
+        Files.move(temp, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        dirty = false;
+    }
+
+    private Entry getEntry(Path file) {
+        String text = generated.get(file);
+        if (text == null && project != null) text = project.getUnityBuild().getContent(file);
+        if (text != null) return new Entry(0, 0, "", parse(text));
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            long modified = attributes.lastModifiedTime().toMillis();
+            long size = attributes.size();
+            Entry entry = entries.get(file);
+            if (entry != null && entry.modified == modified && entry.size == size) {
+                return entry;
+            }
+            byte[] content = Files.readAllBytes(file);
+            String hash = FileUtils.toHex(FileUtils.newDigest().digest(content));
+            List<String> directives;
+            if (entry != null && entry.hash.equals(hash)) {
+                directives = entry.directives;
+            } else {
+                directives = parse(new String(content, StandardCharsets.ISO_8859_1));
+            }
+            entry = new Entry(modified, size, hash, directives);
+            entries.put(file, entry);
+            dirty = true;
+            return entry;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<String> parse(String content) {
+        List<String> directives = new ArrayList<>();
+        Matcher matcher = INCLUDE.matcher(content);
+        while (matcher.find()) {
+            directives.add(matcher.group(1) + matcher.group(2).trim());
+        }
+        return directives;
+    }
+
+    private static Optional<Path> resolve(Path dir, String directive, List<Path> includeDirs) {
+        String name = directive.substring(1);
+        if (directive.charAt(0) == '"') {
+            Path file = dir.resolve(name).normalize();
+            if (Files.isRegularFile(file)) return Optional.of(file);
+        }
+        for (Path includeDir : includeDirs) {
+            Path file = includeDir.resolve(name).normalize();
+            if (Files.isRegularFile(file)) return Optional.of(file);
+        }
+        return Optional.empty();
+    }
+
+    private String relativize(Path path) {
+        return path.startsWith(root) ? root.relativize(path).toString() : path.toString();
+    }
+
+    private void load() {
+        if (Files.notExists(cacheFile)) return;
+        try {
+            for (String line : Files.readAllLines(cacheFile, StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t");
+                if (fields.length < 4) continue;
+                List<String> directives = new ArrayList<>(Arrays.asList(fields).subList(4, fields.length));
+                entries.put(root.resolve(Paths.get(fields[0])).normalize(),
+                        new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3], directives));
+            }
+        } catch (IOException | RuntimeException e) {
+            entries.clear();
+        }
+    }
+
+    private static class Entry {
+        private final long modified;
+        private final long size;
+        private final String hash;
+        private final List<String> directives;
+
+        private Entry(long modified, long size, String hash, List<String> directives) {
+            this.modified = modified;
+            this.size = size;
+            this.hash = hash;
+            this.directives = directives;
+        }
+    }
+}
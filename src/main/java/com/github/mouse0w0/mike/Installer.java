@@ -0,0 +1,173 @@
+package com.github.mouse0w0.mike;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class Installer {
+    public static final String MANIFEST_FILE = "install.manifest";
+
+    private final Project project;
+    private final String buildDir;
+    private final Path installDir;
+
+    public Installer(Project project, String buildDir, Path installDir) {
+        this.project = project;
+        this.buildDir = buildDir;
+        this.installDir = installDir.toAbsolutePath().normalize();
+    }
+
+    public static Map<String, String> getLayout(Project project, Target target) {
+        Map<String, String> layout = new TreeMap<>();
+        for (String header : project.getSources().getHeaderFiles(target)) {
+            layout.put("include/" + Paths.get(header).getFileName(), header);
+        }
+        if (target.isExecutable()) layout.put("bin/" + target.getName(), project.getExecutable(target));
+        if (target.isStaticLibrary()) layout.put("lib/" + target.getName() + ".a", project.getStaticLibrary(target));
+        if (target.isSharedLibrary()) layout.put("lib/" + target.getName() + ".so", project.getSharedLibrary(target));
+        return layout;
+    }
+
+    public static boolean isExecutable(String path) {
+        return path.startsWith("bin/") || path.endsWith(".so");
+    }
+
+    public String install(Target target) throws IOException {
+        Path root = project.getRoot();
+        Map<Path, Record> records = readManifest(target);
+        Map<Path, Record> previous = new LinkedHashMap<>();
+        Map<Path, Record> installed = new LinkedHashMap<>();
+        for (Map.Entry<Path, Record> entry : records.entrySet()) {
+            (entry.getKey().startsWith(installDir) ? previous : installed).put(entry.getKey(), entry.getValue());
+        }
+        int copied = 0;
+        int unchanged = 0;
+        for (Map.Entry<String, String> entry : getLayout(project, target).entrySet()) {
+            Path source = root.resolve(entry.getValue());
+            if (Files.notExists(source)) {
+                throw new IllegalStateException("No found " + entry.getValue() + ", build target " + target.getName() + " first");
+            }
+            Path destination = installDir.resolve(entry.getKey());
+            String hash = FileUtils.toHex(FileUtils.newDigest().digest(Files.readAllBytes(source)));
+            Record record = previous.get(destination);
+            if (record != null && record.hash.equals(hash) && record.matches(destination)) {
+                installed.put(destination, record);
+                unchanged++;
+                continue;
+            }
+            Files.createDirectories(destination.getParent());
+            Path temp = FileUtils.getUniqueTempFile(destination);
+            try {
+                Files.copy(source, temp, StandardCopyOption.COPY_ATTRIBUTES);
+                Files.move(temp, destination, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            installed.put(destination, Record.of(hash, destination));
+            copied++;
+        }
+
+        int removed = 0;
+        for (Map.Entry<Path, Record> entry : previous.entrySet()) {
+            if (!installed.containsKey(entry.getKey()) && entry.getValue().matches(entry.getKey())) {
+                Files.delete(entry.getKey());
+                removed++;
+            }
+        }
+        writeManifest(target, installed);
+        return copied + " copied, " + unchanged + " unchanged, " + removed + " removed";
+    }
+
+    public String uninstall(Target target) throws IOException {
+        Map<Path, Record> remaining = readManifest(target);
+        List<Path> files = new ArrayList<>();
+        for (Path file : remaining.keySet()) {
+            if (file.startsWith(installDir)) files.add(file);
+        }
+        if (files.isEmpty()) {
+            throw new IllegalStateException("No install manifest for " + target.getName() + " in " + installDir
+                    + ", refusing to remove files not installed by mike");
+        }
+        int removed = 0;
+        for (Path file : files) {
+            remaining.remove(file);
+            if (Files.deleteIfExists(file)) removed++;
+        }
+        if (remaining.isEmpty()) {
+            Files.deleteIfExists(getManifest(target));
+        } else {
+            writeManifest(target, remaining);
+        }
+        return removed + " removed";
+    }
+
+    private Path getManifest(Target target) {
+        String profileDir = project.getProfile() == null ? buildDir : buildDir + "/" + project.getProfile();
+        return project.getRoot().resolve(profileDir).resolve(target.getName()).resolve(MANIFEST_FILE);
+    }
+
+    private Map<Path, Record> readManifest(Target target) throws IOException {
+        Map<Path, Record> records = new LinkedHashMap<>();
+        Path manifest = getManifest(target);
+        if (Files.notExists(manifest)) return records;
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t", 4);
+            if (fields.length < 4) continue;
+            try {
+                records.put(Paths.get(fields[3]), new Record(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return records;
+    }
+
+    private void writeManifest(Target target, Map<Path, Record> records) throws IOException {
+        Path manifest = getManifest(target);
+        Files.createDirectories(manifest.getParent());
+        Path temp = FileUtils.getUniqueTempFile(manifest);
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<Path, Record> entry : records.entrySet()) {
+                Record record = entry.getValue();
+                writer.write(record.hash + "\t" + record.size + "\t" + record.modified + "\t" + entry.getKey() + "\n");
+            }
+        }
+        Files.move(temp, manifest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static class Record {
+        private final String hash;
+        private final long size;
+        private final long modified;
+
+        private Record(String hash, long size, long modified) {
+            this.hash = hash;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        private static Record of(String hash, Path file) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return new Record(hash, attributes.size(), attributes.lastModifiedTime().toMillis());
+        }
+
+        private boolean matches(Path file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                return attributes.isRegularFile() && attributes.size() == size && attributes.lastModifiedTime().toMillis() == modified;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,558 @@
+package com.github.mouse0w0.mike;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+
+public class MakefileBackend implements Backend {
+    public static final String MAKEFILE = "Makefile";
+
+    private static final int BATCH_PER_THREAD = 16;
+
+    private static final String COMPILE = "$(if $(CACHE_DIR)$(WORKERS)$(TRACE),$(MIKE) compile"
+            + "$(if $(CACHE_DIR), --cache-dir=$(CACHE_DIR) --cache-size=$(CACHE_SIZE))$(if $(WORKERS), \"--workers=$(WORKERS)\")"
+            + "$(if $(TRACE), --trace=$(TRACE)) -- )";
+
+    @Override
+    public String getFileName() {
+        return MAKEFILE;
+    }
+
+    @Override
+    public void generate(Project project, PrintWriter writer) {
+        generateHeader(project, writer);
+        generateOptions(project, writer);
+        generateTasks(project, writer);
+        generateRegenerate(project, writer);
+        generateScripts(project, writer);
+        generateTargets(project, writer);
+        generateTests(project, writer);
+        generateHelp(project, writer);
+    }
+
+    private static void generateHeader(Project project, PrintWriter writer) {
+        writer.println("SHELL = /bin/bash");
+        writer.println();
+    }
+
+    private static void generateOptions(Project project, PrintWriter writer) {
+        Options options = project.getBaseOptions();
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println("# OPTIONS");
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println("BUILD_DIR = " + options.getBuildDir());
+        writer.println("INSTALL_DIR = " + options.getInstallDir());
+        writer.println("CXX = " + options.getCxx());
+        writer.println("CXXFLAGS = " + options.getCxxflags());
+        writer.println("LD = " + options.getLd());
+        writer.println("LDFLAGS = " + options.getLdflags());
+        writer.println("AR = " + options.getAr());
+        writer.println("ARFLAGS = " + options.getArflags());
+        writer.println("NM = " + options.getNm());
+        writer.println("MIKE = " + options.getMike());
+        writer.println("CACHE_DIR = " + options.getCacheDir());
+        writer.println("CACHE_SIZE = " + options.getCacheSize());
+        writer.println("WORKERS = " + options.getWorkers());
+        writer.println("TRACE = ");
+        writer.println("TRACE_CMD = $(if $(TRACE),$(MIKE) trace --trace=$(TRACE) --category=$(1) --name=$@ -- )");
+        writer.println();
+        generateProfiles(project, writer);
+    }
+
+    private static void generateProfiles(Project project, PrintWriter writer) {
+        if (project.getProfiles().isEmpty()) return;
+        Options base = project.getBaseOptions();
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println("# PROFILES");
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println("PROFILE ?= " + (project.getProfile() == null ? "" : project.getProfile()));
+        List<String> names = new ArrayList<>();
+        for (Profile profile : project.getProfiles()) {
+            names.add(profile.getName());
+            Options options = profile.getOptions();
+            writer.println("ifeq ($(PROFILE)," + profile.getName() + ")");
+            generateOverride(writer, "INSTALL_DIR", base.getInstallDir(), options.getInstallDir());
+            generateOverride(writer, "CXX", base.getCxx(), options.getCxx());
+            generateOverride(writer, "CXXFLAGS", base.getCxxflags(), options.getCxxflags());
+            generateOverride(writer, "LD", base.getLd(), options.getLd());
+            generateOverride(writer, "LDFLAGS", base.getLdflags(), options.getLdflags());
+            generateOverride(writer, "AR", base.getAr(), options.getAr());
+            generateOverride(writer, "ARFLAGS", base.getArflags(), options.getArflags());
+            generateOverride(writer, "NM", base.getNm(), options.getNm());
+            generateOverride(writer, "CACHE_DIR", base.getCacheDir(), options.getCacheDir());
+            generateOverride(writer, "CACHE_SIZE", base.getCacheSize(), options.getCacheSize());
+            generateOverride(writer, "WORKERS", base.getWorkers(), options.getWorkers());
+            writer.println("endif");
+        }
+        writer.println("ifneq ($(PROFILE),)");
+        writer.println("ifeq ($(filter $(PROFILE)," + String.join(" ", names) + "),)");
+        writer.println("$(error Unknown profile $(PROFILE), expected one of " + String.join(" ", names) + ")");
+        writer.println("endif");
+        writer.println("endif");
+        writer.println("PROFILE_DIR = $(BUILD_DIR)$(if $(PROFILE),/$(PROFILE))");
+        writer.println("OUTPUT_DIR = $(if $(PROFILE),$(PROFILE_DIR)/$(1)/)");
+        writer.println();
+    }
+
+    private static void generateOverride(PrintWriter writer, String name, String base, String value) {
+        if (!value.equals(base)) {
+            writer.println(name + " = " + value);
+        }
+    }
+
+    private static String getOutput(Project project, Target target, String suffix) {
+        if (project.getProfiles().isEmpty()) return target.getName() + suffix;
+        return "$(call OUTPUT_DIR," + target.getName() + ")" + target.getName() + suffix;
+    }
+
+    private static String getLibraryOutput(Project project, Target target) {
+        return getOutput(project, target, target.isStaticLibrary() ? ".a" : ".so");
+    }
+
+    private static String getTargetDir(Project project, Target target) {
+        return (project.getProfiles().isEmpty() ? "$(BUILD_DIR)/" : "$(PROFILE_DIR)/") + target.getName();
+    }
+
+    private static String getInterfaceStamp(Project project, Target target) {
+        return getTargetDir(project, target) + "/" + target.getName() + ".so.interface";
+    }
+
+    private static String getLinkDependency(Project project, Target target) {
+        return target.isStaticLibrary() ? getLibraryOutput(project, target) : getInterfaceStamp(project, target);
+    }
+
+    private static String getProfileFlag(Project project) {
+        return project.getProfiles().isEmpty() ? "" : " --profile=$(PROFILE)";
+    }
+
+    private static void generateRegenerate(Project project, PrintWriter writer) {
+        Set<String> dirs = new TreeSet<>();
+        for (Target target : project.getTargets()) {
+            for (String dir : project.getSources().getDirectories(target)) {
+                if (!Sources.isCurrentPath(dir)) dirs.add(dir);
+            }
+        }
+        String fingerprint = project.getOptions().getBuildDir() + "/" + Fingerprint.FINGERPRINT_FILE;
+        writer.println("-include " + fingerprint);
+        writer.print(fingerprint + ": " + Project.MIKEFILE);
+        for (String dir : dirs) {
+            writer.print(" " + dir);
+        }
+        writer.println();
+        writer.println("\t@$(MIKE)" + (project.getProfile() == null ? "" : " --profile=" + project.getProfile()));
+        writer.println();
+    }
+
+    private static void generateTasks(Project project, PrintWriter writer) {
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println("# TASKS");
+        writer.println("# --------------------------------------------------------------------------- ");
+
+        generateTask(project, writer, "all");
+        writer.print("clean:");
+        for (Target target : project.getTargets()) {
+            writer.print(" " + target.getName() + "/clean");
+        }
+        writer.println();
+        writer.println("\t@rm -rf " + (project.getProfiles().isEmpty() ? "$(BUILD_DIR)/" : "$(PROFILE_DIR)/") + ObjectPool.POOL_DIR);
+        writer.println(".PHONY: clean");
+        writer.println();
+        generateTask(project, writer, "depend");
+        generateTask(project, writer, "install");
+        generateTask(project, writer, "uninstall");
+        generateTask(project, writer, "package");
+    }
+
+    private static void generateTask(Project project, PrintWriter writer, String task) {
+        writer.print(task + ":");
+        for (Target target : project.getTargets()) {
+            writer.print(" " + target.getName() + "/" + task);
+        }
+        writer.println();
+        writer.println(".PHONY: " + task);
+        writer.println();
+    }
+
+    private static void generateScripts(Project project, PrintWriter writer) {
+        if (project.getScripts().isEmpty()) return;
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println("# SCRIPTS");
+        writer.println("# --------------------------------------------------------------------------- ");
+        for (Script script : project.getScripts()) {
+            String task = "run/" + script.getName();
+            writer.println(task + ":");
+            for (String command : script.getCommands()) {
+                writer.print("\t");
+                writer.println(command);
+            }
+            writer.println(".PHONY: " + task);
+            writer.println();
+        }
+    }
+
+    private static void generateTargets(Project project, PrintWriter writer) {
+        Sources sources = project.getSources();
+        for (Target target : project.getTargets()) {
+            if (target.getPch() != null) {
+                writer.println("FORCE:");
+                writer.println();
+                break;
+            }
+        }
+        generateObjectPools(project, writer);
+
+        List<Target> targets = project.getTargets();
+        int batchSize = Math.max(1, Runtime.getRuntime().availableProcessors() * BATCH_PER_THREAD);
+        List<CharArrayWriter> buffers = new ArrayList<>();
+        for (int start = 0; start < targets.size(); start += batchSize) {
+            int offset = start;
+            int end = Math.min(targets.size(), start + batchSize);
+            while (buffers.size() < end - start) buffers.add(new CharArrayWriter());
+            IntStream.range(start, end).parallel().forEach(index -> {
+                CharArrayWriter buffer = buffers.get(index - offset);
+                buffer.reset();
+                PrintWriter section = new PrintWriter(buffer);
+                generateTarget(project, sources, targets.get(index), section);
+                section.flush();
+            });
+            try {
+                for (int index = start; index < end; index++) {
+                    buffers.get(index - offset).writeTo(writer);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static void generateTarget(Project project, Sources sources, Target target, PrintWriter writer) {
+        String name = target.getName();
+        String _NAME = name.toUpperCase();
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println("# TARGET " + _NAME);
+        writer.println("# --------------------------------------------------------------------------- ");
+
+        String varBuildDir = _NAME + "_BUILD_DIR";
+        writer.println(varBuildDir + " = " + getTargetDir(project, target));
+
+        String varDepend = _NAME + "_DEPEND";
+        writer.println(varDepend + " = $(" + varBuildDir + ")/" + name + ".d");
+        writer.println("-include $(" + varDepend + ")");
+
+        String varSources = _NAME + "_SOURCES";
+        generateList(writer, varSources, sources.getSourceFiles(target));
+
+        String varHeaders = _NAME + "_HEADERS";
+        generateList(writer, varHeaders, sources.getHeaderFiles(target));
+
+        String varObjects = _NAME + "_OBJECTS";
+        if (project.getObjectPool().isShared(target)) {
+            List<String> objects = new ArrayList<>();
+            for (String unit : UnityBuild.getCompileUnits(project, target)) {
+                String pool = project.getObjectPool().getPool(target, unit);
+                objects.add("$(" + (pool != null ? getPoolVar(pool) : varBuildDir) + ")/" + unit + ".o");
+            }
+            generateList(writer, varObjects, objects);
+        } else if (target.isUnity()) {
+            String varUnitySources = _NAME + "_UNITY_SOURCES";
+            generateList(writer, varUnitySources, UnityBuild.getCompileUnits(project, target));
+            writer.println(varObjects + " = $(patsubst %, $(" + varBuildDir + ")/%.o, $(" + varUnitySources + "))");
+        } else {
+            writer.println(varObjects + " = $(patsubst %, $(" + varBuildDir + ")/%.o, $(" + varSources + "))");
+        }
+
+        String varIncludes = _NAME + "_INCLUDES";
+        writer.print(varIncludes + " =");
+        for (String include : project.getIncludes(target)) {
+            writer.print(" " + include);
+        }
+        writer.println();
+
+        String varIncludeFlags = _NAME + "_INCLUDE_FLAGS";
+        writer.println(varIncludeFlags + " = $(addprefix -I,$(" + varIncludes + "))");
+
+        String varPch = _NAME + "_PCH";
+        String varPchHeader = _NAME + "_PCH_HEADER";
+        String varPchFlags = _NAME + "_PCH_FLAGS";
+        String varPchCommand = _NAME + "_PCH_COMMAND";
+        String pchHeader = PrecompiledHeader.getHeader(project, target);
+        if (pchHeader != null) {
+            if (!project.getProfiles().isEmpty()) pchHeader = PrecompiledHeader.getHeader("$(PROFILE_DIR)", target);
+            writer.println(varPchHeader + " = " + pchHeader);
+            writer.println(varPch + " = " + PrecompiledHeader.getOutput(pchHeader));
+            writer.println(varPchFlags + " = $(" + varBuildDir + ")/pch.flags");
+            writer.println(varPchCommand + " = $(strip $(CXX) $(CXXFLAGS) $(" + varIncludeFlags + "))");
+        }
+
+        String varLibraries = _NAME + "_LIBS";
+        writer.print(varLibraries + " =");
+        for (String library : project.getLinkLibraries(target, dependency -> getLibraryOutput(project, dependency))) {
+            writer.print(" " + library);
+        }
+        writer.println();
+
+        String varDepends = _NAME + "_DEPENDS";
+        writer.print(varDepends + " =");
+        for (Target dependency : project.getTransitiveDependencies(target)) {
+            writer.print(" " + getLinkDependency(project, dependency));
+        }
+        writer.println();
+
+        String varExecutable = _NAME + "_EXECUTABLE";
+        String varStaticLibrary = _NAME + "_STATIC_LIB";
+        String varSharedLibrary = _NAME + "_SHARED_LIB";
+        String varInterface = _NAME + "_INTERFACE";
+
+        String taskGenExecutable = getOutput(project, target, "");
+        String taskGenStaticLibrary = getOutput(project, target, ".a");
+        String taskGenSharedLibrary = getOutput(project, target, ".so");
+
+        if (target.isExecutable()) {
+            writer.println();
+            writer.println(varExecutable + " = " + taskGenExecutable);
+            writer.println(taskGenExecutable + ": $(" + varObjects + ") $(" + varDepends + ")");
+            writer.println("\t$(call TRACE_CMD,link)$(LD) $(LDFLAGS) -o $@ $(" + varObjects + ") $(" + varLibraries + ")");
+        }
+
+        if (target.isStaticLibrary()) {
+            writer.println();
+            writer.println(varStaticLibrary + " = " + taskGenStaticLibrary);
+            writer.println(taskGenStaticLibrary + ": $(" + varObjects + ")");
+            writer.println("\t$(call TRACE_CMD,archive)$(AR) $(ARFLAGS) $@ $(" + varObjects + ")");
+        }
+
+        if (target.isSharedLibrary()) {
+            writer.println();
+            writer.println(varSharedLibrary + " = " + taskGenSharedLibrary);
+            writer.println(taskGenSharedLibrary + ": $(" + varObjects + ") $(" + varDepends + ")");
+            writer.println("\t$(call TRACE_CMD,link)$(CXX) $(LDFLAGS) -o $@ -shared $(" + varObjects + ") $(" + varLibraries + ")");
+
+            writer.println();
+            writer.println(varInterface + " = " + getInterfaceStamp(project, target));
+            writer.println("$(" + varInterface + "): " + taskGenSharedLibrary);
+            writer.println("\t@mkdir -p $(dir $@)");
+            writer.println("\t@" + BuildGraph.getInterfaceCommand("$(NM)", "$<", "$@", "$$"));
+        }
+
+        String taskAll = name + "/all";
+        writer.println();
+        writer.print(taskAll + ":");
+        if (target.isExecutable()) writer.print(" " + taskGenExecutable);
+        if (target.isStaticLibrary()) writer.print(" " + taskGenStaticLibrary);
+        if (target.isSharedLibrary()) writer.print(" " + taskGenSharedLibrary);
+        for (Target dependency : project.getDependencies(target)) {
+            writer.print(" " + dependency.getName() + "/all");
+        }
+        writer.println();
+        writer.println(".PHONY: " + taskAll);
+
+        String taskClean = name + "/clean";
+        writer.println();
+        writer.println(taskClean + ":");
+        writer.println("\t@echo Cleaning target " + name);
+        writer.println("\t@rm -rf $(" + varBuildDir + ")");
+        if (pchHeader != null) writer.println("\t@rm -f $(" + varPch + ")");
+        if (target.isExecutable()) writer.println("\t@rm -f $(" + varExecutable + ")");
+        if (target.isStaticLibrary()) writer.println("\t@rm -f $(" + varStaticLibrary + ")");
+        if (target.isSharedLibrary()) writer.println("\t@rm -f $(" + varSharedLibrary + ")");
+        writer.println("\t@echo Cleaned target");
+        writer.println(".PHONY: " + taskClean);
+
+        String taskDepend = name + "/depend";
+        writer.println();
+        writer.println(taskDepend + ":");
+        writer.println("\t@echo Analyzing target " + name);
+        writer.println("\t@$(call TRACE_CMD,depend)$(MIKE) depend --build-dir=$(BUILD_DIR)" + getProfileFlag(project) + " " + name);
+        writer.println("\t@echo Analyzed target");
+        writer.println(".PHONY: " + taskDepend);
+
+        String taskInstall = name + "/install";
+        writer.println();
+        writer.println(taskInstall + ": " + taskAll);
+        writer.println("\t@echo Installing target " + name);
+        writer.println("\t@$(MIKE) install --build-dir=$(BUILD_DIR)" + getProfileFlag(project) + " --install-dir=$(INSTALL_DIR) " + name);
+        writer.println("\t@echo Installed target");
+        writer.println(".PHONY: " + taskInstall);
+
+        String taskUninstall = name + "/uninstall";
+        writer.println();
+        writer.println(taskUninstall + ":");
+        writer.println("\t@echo Uninstalling target " + name);
+        writer.println("\t@$(MIKE) uninstall --build-dir=$(BUILD_DIR)" + getProfileFlag(project) + " --install-dir=$(INSTALL_DIR) " + name);
+        writer.println("\t@echo Uninstalled target");
+        writer.println(".PHONY: " + taskUninstall);
+
+        String taskPackage = name + "/package";
+        writer.println();
+        writer.println(taskPackage + ": " + taskAll);
+        writer.println("\t@echo Packaging target " + name);
+        writer.println("\t@$(MIKE) package --build-dir=$(BUILD_DIR)" + getProfileFlag(project) + " " + name);
+        writer.println("\t@echo Packaged target");
+        writer.println(".PHONY: " + taskPackage);
+
+        if (pchHeader != null) {
+            writer.println();
+            writer.println("$(" + varPchFlags + "): FORCE");
+            writer.println("\t@mkdir -p $(dir $@)");
+            writer.println("\t@echo '$(" + varPchCommand + ")' | cmp -s - $@ || echo '$(" + varPchCommand + ")' > $@");
+            writer.println();
+            writer.println("$(" + varPch + "): $(" + varPchHeader + ") $(" + varPchFlags + ")");
+            writer.println("\t$(call TRACE_CMD,precompile)$(" + varPchCommand + ") -x c++-header -o $@ -c $<");
+        }
+
+        writer.println();
+        if (pchHeader != null) {
+            writer.println("$(" + varBuildDir + ")/%.o: % | $(" + varPch + ")");
+        } else {
+            writer.println("$(" + varBuildDir + ")/%.o: %");
+        }
+        writer.println("\t@mkdir -p $(dir $@)");
+        writer.print("\t" + COMPILE + "$(CXX) $(CXXFLAGS) $(" + varIncludeFlags + ")");
+        if (pchHeader != null) writer.print(" -include $(" + varPchHeader + ")");
+        writer.println(" -o $@ -c $<");
+        writer.println();
+    }
+
+    private static void generateObjectPools(Project project, PrintWriter writer) {
+        Map<String, List<String>> pools = project.getObjectPool().getPools();
+        if (pools.isEmpty()) return;
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println("# SHARED OBJECTS");
+        writer.println("# --------------------------------------------------------------------------- ");
+        for (Map.Entry<String, List<String>> entry : pools.entrySet()) {
+            String varBuildDir = getPoolVar(entry.getKey());
+            String varIncludes = "SHARED_" + entry.getKey().toUpperCase() + "_INCLUDES";
+            String varIncludeFlags = "SHARED_" + entry.getKey().toUpperCase() + "_INCLUDE_FLAGS";
+            writer.println(varBuildDir + " = " + (project.getProfiles().isEmpty() ? "$(BUILD_DIR)/" : "$(PROFILE_DIR)/")
+                    + ObjectPool.POOL_DIR + "/" + entry.getKey());
+            writer.print(varIncludes + " =");
+            for (String include : entry.getValue()) {
+                writer.print(" " + include);
+            }
+            writer.println();
+            writer.println(varIncludeFlags + " = $(addprefix -I,$(" + varIncludes + "))");
+            writer.println("$(" + varBuildDir + ")/%.o: %");
+            writer.println("\t@mkdir -p $(dir $@)");
+            writer.println("\t" + COMPILE + "$(CXX) $(CXXFLAGS) $(" + varIncludeFlags + ") -o $@ -c $<");
+            writer.println();
+        }
+    }
+
+    private static String getPoolVar(String pool) {
+        return "SHARED_" + pool.toUpperCase() + "_BUILD_DIR";
+    }
+
+    private static void generateTests(Project project, PrintWriter writer) {
+        if (project.getTests().isEmpty()) return;
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println("# TESTS");
+        writer.println("# --------------------------------------------------------------------------- ");
+        String testTask = "test";
+        Set<String> testTargets = new LinkedHashSet<>();
+        for (Test test : project.getTests()) {
+            testTargets.add(getTestTarget(project, test));
+        }
+        writer.print(testTask + ":");
+        for (String testTarget : testTargets) {
+            writer.print(" " + testTarget);
+        }
+        writer.println();
+        writer.println("\t@$(MIKE) test --build-dir=$(BUILD_DIR)" + getProfileFlag(project) + "$(if $(TRACE), --trace=$(TRACE))");
+        writer.println(".PHONY: " + testTask);
+        writer.println();
+
+        writer.println("TEST_TOTAL ?= 1");
+        writer.println("TEST_CURRENT ?= 1");
+        writer.println();
+
+        for (Test test : project.getTests()) {
+            String task = "test/" + test.getName();
+            writer.println(task + ": TEST_NAME = " + test.getName());
+            writer.println(task + ": TEST_TARGET = " + getTestTarget(project, test));
+            if (isNotEmpty(test.getArgs())) {
+                writer.println(task + ": TEST_ARGS = " + test.getArgs());
+            }
+            if (isNotEmpty(test.getInput())) {
+                writer.println(task + ": TEST_INPUT = " + test.getInput());
+            }
+            writer.println(task + ": TEST_EXPECT = " + test.getExpect());
+            writer.println(task + ": " + getTestTarget(project, test));
+            writer.println("\t@echo -e \"\\tStart $(TEST_CURRENT)\\t: $(TEST_NAME)\"");
+            writer.print("\t$(eval TEST_OUTPUT=$(shell ./$(TEST_TARGET)");
+            if (isNotEmpty(test.getArgs())) {
+                writer.print(" $(TEST_ARGS)");
+            }
+            if (isNotEmpty(test.getInput())) {
+                writer.print(" <<< " + test.getInput());
+            }
+            writer.println("))");
+            writer.println("\t$(eval TEST_RESULT=$(shell if [ \"$(TEST_OUTPUT)\" == \"$(TEST_EXPECT)\" ]; then echo Passed; else echo Failed; fi;))");
+            writer.println("\t@echo -e \"$(TEST_CURRENT)/$(TEST_TOTAL)\\tTest  $(TEST_CURRENT)\\t: $(TEST_NAME)\\t................   $(TEST_RESULT)\"");
+            writer.println(".PHONY: " + task);
+            writer.println();
+        }
+    }
+
+    private static String getTestTarget(Project project, Test test) {
+        Target target = project.getTarget(test.getTarget());
+        return target != null ? getOutput(project, target, "") : test.getTarget();
+    }
+
+    private static void generateHelp(Project project, PrintWriter writer) {
+        String helpTask = "help";
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println("# HELP");
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println(helpTask + ":");
+        writer.println("\t@echo \"The following are some of the valid targets for this Makefile:\"");
+        writer.println("\t@echo \"... all (the default if no target is provided)\"");
+        writer.println("\t@echo \"... clean\"");
+        writer.println("\t@echo \"... depend\"");
+        writer.println("\t@echo \"... install\"");
+        writer.println("\t@echo \"... uninstall\"");
+        writer.println("\t@echo \"... package\"");
+        if (!project.getTests().isEmpty()) {
+            writer.println("\t@echo \"... test\"");
+        }
+        for (Script script : project.getScripts()) {
+            writer.println("\t@echo \"... run/" + script.getName() + "\"");
+        }
+        for (Target target : project.getTargets()) {
+            if (target.isExecutable()) {
+                writer.println("\t@echo \"... " + target.getName() + "\"");
+            }
+            if (target.isStaticLibrary()) {
+                writer.println("\t@echo \"... " + target.getName() + ".a\"");
+            }
+            if (target.isSharedLibrary()) {
+                writer.println("\t@echo \"... " + target.getName() + ".so\"");
+            }
+        }
+        writer.println(".PHONY: " + helpTask);
+    }
+
+    private static void generateList(PrintWriter writer, String var, List<String> values) {
+        writer.print(var + " =");
+        for (String value : values) {
+            writer.println(" \\");
+            writer.print("\t" + value);
+        }
+        writer.println();
+    }
+
+    private static boolean isEmpty(String s) {
+        return s == null || s.isEmpty();
+    }
+
+    private static boolean isNotEmpty(String s) {
+        return s != null && !s.isEmpty();
+    }
+}
@@ -1,27 +1,482 @@
 package com.github.mouse0w0.mike;
 
+import joptsimple.OptionException;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import joptsimple.ValueConversionException;
+import joptsimple.ValueConverter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Function;
 
 public class Mike {
+    private static final String USAGE = "usage 'mike [--watch] [--profile=name] [folder]', 'mike --recursive [-j jobs] [--profile=name] [folder]', 'mike build [-j jobs] [--profile=name] [--trace=file] [folder]', " +
+            "'mike cache [--clear] [folder]', 'mike depend [--build-dir=dir] [--profile=name] [targets]', " +
+            "'mike affected [--build-dir=dir] [--profile=name] [files]', " +
+            "'mike package [-j jobs] [--build-dir=dir] [--profile=name] [targets]', " +
+            "'mike install|uninstall [--build-dir=dir] [--profile=name] [--install-dir=dir] [targets]', " +
+            "'mike test [-j jobs] [--timeout=seconds] [--junit=file] [--profile=name] [--trace=events] [folder]', " +
+            "'mike worker [--bind=address] [--port=port] [-j slots] [--work-dir=dir]', " +
+            "'mike trace --trace=events [--category=name] [--name=name] -- command', 'mike trace --report=file events' " +
+            "or 'mike compile [--cache-dir=dir] [--cache-size=size] [--workers=hosts] [--trace=events] -- command'";
+
     public static void main(String[] args) {
+        if (args.length == 0 || args.length == 1 && !args[0].startsWith("-") && !isCommand(args[0])) {
+            generate(args.length == 0 ? Paths.get(System.getProperty("user.dir")) : Paths.get(args[0]).toAbsolutePath(), null);
+            return;
+        }
+
+        ValueConverter<Integer> integerConverter = number(Integer.class, Integer::valueOf);
+        ValueConverter<Long> longConverter = number(Long.class, Long::valueOf);
+        OptionParser parser = new OptionParser();
+        OptionSpec<Void> watch = parser.accepts("watch", "Regenerate Makefile whenever the project changes");
+        OptionSpec<Void> recursive = parser.accepts("recursive", "Generate every project found under the folder");
+        OptionSpec<Integer> jobs = parser.accepts("j", "Number of parallel jobs").withRequiredArg().withValuesConvertedBy(integerConverter)
+                .defaultsTo(Runtime.getRuntime().availableProcessors());
+        OptionSpec<String> cacheDir = parser.accepts("cache-dir", "Object cache directory").withRequiredArg();
+        OptionSpec<String> cacheSize = parser.accepts("cache-size", "Maximum object cache size").withRequiredArg().defaultsTo("5G");
+        OptionSpec<String> buildDir = parser.accepts("build-dir", "Build directory overriding BUILD_DIR").withRequiredArg();
+        OptionSpec<Long> timeout = parser.accepts("timeout", "Default test timeout in seconds").withRequiredArg().withValuesConvertedBy(longConverter).defaultsTo(60L);
+        OptionSpec<String> junit = parser.accepts("junit", "JUnit XML report file").withRequiredArg();
+        OptionSpec<Void> clear = parser.accepts("clear", "Remove every object from the cache");
+        OptionSpec<String> profile = parser.accepts("profile", "Profile overriding PROFILE").withRequiredArg();
+        OptionSpec<String> workers = parser.accepts("workers", "Compile workers as host:port list").withRequiredArg().defaultsTo("");
+        OptionSpec<String> bind = parser.accepts("bind", "Worker bind address").withRequiredArg().defaultsTo("127.0.0.1");
+        OptionSpec<Integer> port = parser.accepts("port", "Worker port").withRequiredArg().withValuesConvertedBy(integerConverter).defaultsTo(Worker.DEFAULT_PORT);
+        OptionSpec<String> workDir = parser.accepts("work-dir", "Worker directory").withRequiredArg();
+        OptionSpec<String> trace = parser.accepts("trace", "Trace file recording every executed action").withRequiredArg();
+        OptionSpec<String> category = parser.accepts("category", "Category of the traced action").withRequiredArg().defaultsTo("command");
+        OptionSpec<String> name = parser.accepts("name", "Name of the traced action").withRequiredArg();
+        OptionSpec<String> installDir = parser.accepts("install-dir", "Install directory overriding INSTALL_DIR").withRequiredArg();
+        OptionSpec<String> report = parser.accepts("report", "Chrome trace file written from recorded events").withRequiredArg();
+        OptionSet options;
+        int jobCount;
+        long testTimeout;
+        try {
+            options = parser.parse(args);
+            jobCount = options.valueOf(jobs);
+            testTimeout = options.valueOf(timeout);
+        } catch (OptionException e) {
+            System.out.println(e.getMessage() + ", " + USAGE);
+            return;
+        }
+
+        List<String> arguments = new ArrayList<>();
+        for (Object argument : options.nonOptionArguments()) {
+            arguments.add(argument.toString());
+        }
+        String command = null;
+        if (!arguments.isEmpty() && isCommand(arguments.get(0))) {
+            command = arguments.remove(0);
+        }
+
+        if ("compile".equals(command)) {
+            if (arguments.isEmpty()) {
+                System.out.println("Missing command, " + USAGE);
+                System.exit(2);
+            }
+            Path dir = Paths.get(System.getProperty("user.dir"));
+            RemoteExecutor remote = WorkerClient.of(options.valueOf(workers));
+            List<String> inputs = remote == null ? new ArrayList<>() : new IncludeScanner(dir).scan(arguments);
+            Trace tracer = Trace.of(options.valueOf(trace));
+            int outputIndex = arguments.indexOf("-o");
+            String output = outputIndex >= 0 && outputIndex + 1 < arguments.size() ? arguments.get(outputIndex + 1) : arguments.get(0);
+            Trace.Span span = tracer == null ? null : tracer.begin(Action.COMPILE, options.has(name) ? options.valueOf(name) : output);
+            try {
+                int exitCode;
+                if (options.has(cacheDir) && !options.valueOf(cacheDir).isEmpty()) {
+                    ObjectCache cache = new ObjectCache(ObjectCache.resolveDir(dir, options.valueOf(cacheDir)),
+                            ObjectCache.parseSize(options.valueOf(cacheSize)));
+                    exitCode = cache.compile(arguments, inputs, remote, dir, System.out);
+                } else {
+                    exitCode = RemoteExecutor.compile(remote, arguments, inputs, dir, System.out);
+                }
+                if (span != null) span.end(exitCode);
+                System.exit(exitCode);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                System.exit(1);
+            }
+        }
+
+        if ("trace".equals(command)) {
+            if (options.has(report) ? arguments.size() != 1 : arguments.isEmpty() || !options.has(trace)) {
+                System.out.println("Missing trace file or command, " + USAGE);
+                System.exit(2);
+            }
+            try {
+                if (options.has(report)) {
+                    Trace.report(Paths.get(arguments.get(0)), Paths.get(options.valueOf(report)), System.out);
+                    return;
+                }
+                Trace.Span span = Trace.of(options.valueOf(trace))
+                        .begin(options.valueOf(category), options.has(name) ? options.valueOf(name) : arguments.get(0));
+                int exitCode = Trace.start(new ProcessBuilder(arguments).inheritIO()).waitFor();
+                span.end(exitCode);
+                System.exit(exitCode);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                System.exit(1);
+            }
+        }
+
+        if ("affected".equals(command)) {
+            if (!affected(Paths.get(System.getProperty("user.dir")), options.valueOf(profile), options.valueOf(buildDir), arguments)) {
+                System.exit(1);
+            }
+            return;
+        }
+
+        if ("package".equals(command)) {
+            if (!pack(Paths.get(System.getProperty("user.dir")), options.valueOf(profile), options.valueOf(buildDir), jobCount, arguments)) {
+                System.exit(1);
+            }
+            return;
+        }
+
+        if ("install".equals(command) || "uninstall".equals(command)) {
+            if (!install(Paths.get(System.getProperty("user.dir")), options.valueOf(profile), options.valueOf(buildDir),
+                    options.valueOf(installDir), "uninstall".equals(command), arguments)) {
+                System.exit(1);
+            }
+            return;
+        }
+
+        if ("worker".equals(command)) {
+            Path dir = options.has(workDir) ? Paths.get(options.valueOf(workDir))
+                    : Paths.get(System.getProperty("java.io.tmpdir"), "mike-worker-" + options.valueOf(port));
+            try {
+                new Worker(new InetSocketAddress(options.valueOf(bind), options.valueOf(port)), dir.toAbsolutePath(),
+                        options.has(jobs) ? jobCount : Runtime.getRuntime().availableProcessors(), Worker.getToken()).run();
+            } catch (IllegalStateException e) {
+                System.out.println(e.getMessage());
+                System.exit(1);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return;
+        }
+
+        if ("depend".equals(command)) {
+            if (!depend(Paths.get(System.getProperty("user.dir")), options.valueOf(profile), options.valueOf(buildDir), arguments)) {
+                System.exit(1);
+            }
+            return;
+        }
+
         Path dir;
-        if (args.length == 0) {
+        if (arguments.size() == 0) {
             dir = Paths.get(System.getProperty("user.dir"));
-        } else if (args.length == 1) {
-            dir = Paths.get(args[0]).toAbsolutePath();
+        } else if (arguments.size() == 1) {
+            dir = Paths.get(arguments.get(0)).toAbsolutePath();
         } else {
-            System.out.println("Too many arguments, usage 'mike [folder]'");
+            System.out.println("Too many arguments, " + USAGE);
             return;
         }
-        System.out.println("Generating Makefile at " + dir);
+
+        if ("build".equals(command)) {
+            if (!build(dir, options.valueOf(profile), jobCount, options.valueOf(trace))) {
+                System.exit(1);
+            }
+        } else if ("test".equals(command)) {
+            if (!test(dir, options.valueOf(profile), options.valueOf(buildDir), jobCount, testTimeout, options.valueOf(junit), options.valueOf(trace))) {
+                System.exit(1);
+            }
+        } else if ("cache".equals(command)) {
+            cache(dir, options.valueOf(profile), options.has(clear));
+        } else if (options.has(recursive)) {
+            try {
+                if (!new Workspace(dir, options.valueOf(profile), jobCount).generate()) {
+                    System.exit(1);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.exit(1);
+            }
+        } else if (options.has(watch)) {
+            try {
+                new Watcher(dir, options.valueOf(profile)).run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            generate(dir, options.valueOf(profile));
+        }
+    }
+
+    private static <V> ValueConverter<V> number(Class<V> type, Function<String, V> parser) {
+        return new ValueConverter<V>() {
+            @Override
+            public V convert(String value) {
+                try {
+                    return parser.apply(value);
+                } catch (NumberFormatException e) {
+                    throw new ValueConversionException("Invalid number " + value, e);
+                }
+            }
+
+            @Override
+            public Class<? extends V> valueType() {
+                return type;
+            }
+
+            @Override
+            public String valuePattern() {
+                return null;
+            }
+        };
+    }
+
+    private static boolean isCommand(String argument) {
+        return argument.equals("build") || argument.equals("compile") || argument.equals("cache")
+                || argument.equals("depend") || argument.equals("test") || argument.equals("worker") || argument.equals("trace") || argument.equals("package")
+                || argument.equals("install") || argument.equals("uninstall") || argument.equals("affected");
+    }
+
+    public static Project generate(Path dir, String profile) {
+        return generate(dir, profile, System.out);
+    }
+
+    public static Project generate(Path dir, String profile, PrintStream out) {
         Path mikefile = dir.resolve(Project.MIKEFILE);
         if (Files.notExists(mikefile)) {
-            System.out.println("No found " + mikefile + ", stop generating");
+            out.println("Generating Makefile at " + dir);
+            out.println("No found " + mikefile + ", stop generating");
+            return null;
+        }
+        Project project = Snapshot.loadProject(dir, profile);
+        String output = Generator.getBackend(project.getOptions()).getFileName();
+        out.println("Generating " + output + " at " + dir);
+        String fingerprint = Fingerprint.compute(project);
+        project.getSources().save();
+        Generator.prepare(project);
+        if (Fingerprint.isUpToDate(project, fingerprint)) {
+            Generator.generatePlan(project);
+            Fingerprint.touch(project);
+            out.println(output + " is up to date");
+            return project;
+        }
+        if (Generator.generate(project)) {
+            out.println("Generating " + output + " successfully");
+        } else {
+            out.println(output + " is unchanged");
+        }
+        Fingerprint.save(project, fingerprint);
+        return project;
+    }
+
+    public static boolean build(Path dir, String profile, int jobs, String traceFile) {
+        System.out.println("Building project at " + dir);
+        Path mikefile = dir.resolve(Project.MIKEFILE);
+        if (Files.notExists(mikefile)) {
+            System.out.println("No found " + mikefile + ", stop building");
+            return false;
+        }
+        Project project = Snapshot.loadProject(dir, profile);
+        Generator.prepare(project);
+        BuildGraph graph = BuildGraph.create(project);
+        graph.save();
+        graph.writeStamps();
+        ObjectCache cache = ObjectCache.of(dir, project.getOptions());
+        Path output = traceFile == null ? null : Paths.get(traceFile).toAbsolutePath();
+        Trace trace = output == null ? null : new Trace(output.resolveSibling(output.getFileName() + ".events"));
+        try {
+            if (trace != null) Files.deleteIfExists(trace.getFile());
+            boolean success = new BuildExecutor(dir, jobs, cache, WorkerClient.of(project.getOptions()), trace).execute(graph.getActions());
+            if (trace != null && Files.exists(trace.getFile())) {
+                Trace.report(trace.getFile(), output, System.out);
+                Files.delete(trace.getFile());
+            }
+            if (!success) {
+                System.out.println("Building project failed");
+                return false;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        System.out.println("Building project successfully");
+        return true;
+    }
+
+    public static boolean depend(Path dir, String profile, String buildDir, List<String> targets) {
+        Path mikefile = dir.resolve(Project.MIKEFILE);
+        if (Files.notExists(mikefile)) {
+            System.out.println("No found " + mikefile + ", stop analyzing");
+            return false;
+        }
+        Project project = Snapshot.loadProject(dir, profile);
+        if (buildDir == null) buildDir = project.getOptions().getBuildDir();
+        List<String> unknown = new ArrayList<>(targets);
+        IncludeScanner scanner = new IncludeScanner(project, buildDir);
+        try {
+            for (Target target : project.getTargets()) {
+                if (!targets.isEmpty() && !unknown.remove(target.getName())) continue;
+                scanner.writeDepend(target, buildDir, scanner.scan(target));
+            }
+            scanner.save();
+            project.getSources().save();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage());
+            return false;
+        }
+        if (!unknown.isEmpty()) {
+            System.out.println("Unknown targets " + String.join(", ", unknown));
+            return false;
+        }
+        return true;
+    }
+
+    public static boolean affected(Path dir, String profile, String buildDir, List<String> files) {
+        Path mikefile = dir.resolve(Project.MIKEFILE);
+        if (Files.notExists(mikefile)) {
+            System.err.println("No found " + mikefile + ", stop analyzing");
+            return false;
+        }
+        Project project = Snapshot.loadProject(dir, profile);
+        if (buildDir == null) buildDir = project.getOptions().getBuildDir();
+        try {
+            if (files.isEmpty()) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+                for (String line; (line = reader.readLine()) != null; ) {
+                    if (!line.trim().isEmpty()) files.add(line.trim());
+                }
+            }
+            List<Path> changes = new ArrayList<>();
+            for (String file : files) {
+                changes.add(dir.resolve(file));
+            }
+            List<String> goals = new Affected(project, buildDir).getGoals(changes);
+            project.getSources().save();
+            if (!goals.isEmpty()) System.out.println(String.join(" ", goals));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    public static boolean pack(Path dir, String profile, String buildDir, int jobs, List<String> targets) {
+        Path mikefile = dir.resolve(Project.MIKEFILE);
+        if (Files.notExists(mikefile)) {
+            System.out.println("No found " + mikefile + ", stop packaging");
+            return false;
+        }
+        Project project = Snapshot.loadProject(dir, profile);
+        if (buildDir == null) buildDir = project.getOptions().getBuildDir();
+        List<String> unknown = new ArrayList<>(targets);
+        Packager packager = new Packager(project, buildDir, jobs);
+        try {
+            for (Target target : project.getTargets()) {
+                if (!targets.isEmpty() && !unknown.remove(target.getName())) continue;
+                String archive = Packager.getArchive(project, target);
+                System.out.println(packager.pack(target) ? "Packaged " + archive : archive + " is up to date");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!unknown.isEmpty()) {
+            System.out.println("Unknown targets " + String.join(", ", unknown));
+            return false;
+        }
+        return true;
+    }
+
+    public static boolean install(Path dir, String profile, String buildDir, String installDir, boolean uninstall, List<String> targets) {
+        Path mikefile = dir.resolve(Project.MIKEFILE);
+        if (Files.notExists(mikefile)) {
+            System.out.println("No found " + mikefile + ", stop " + (uninstall ? "uninstalling" : "installing"));
+            return false;
+        }
+        Project project = Snapshot.loadProject(dir, profile);
+        if (buildDir == null) buildDir = project.getOptions().getBuildDir();
+        if (installDir == null) installDir = project.getOptions().getInstallDir();
+        List<String> unknown = new ArrayList<>(targets);
+        Installer installer = new Installer(project, buildDir, dir.resolve(installDir));
+        try {
+            for (Target target : project.getTargets()) {
+                if (!targets.isEmpty() && !unknown.remove(target.getName())) continue;
+                System.out.println((uninstall ? "Uninstalled " : "Installed ") + target.getName() + ": "
+                        + (uninstall ? installer.uninstall(target) : installer.install(target)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!unknown.isEmpty()) {
+            System.out.println("Unknown targets " + String.join(", ", unknown));
+            return false;
+        }
+        return true;
+    }
+
+    public static boolean test(Path dir, String profile, String buildDir, int jobs, long timeout, String report, String traceFile) {
+        Path mikefile = dir.resolve(Project.MIKEFILE);
+        if (Files.notExists(mikefile)) {
+            System.out.println("No found " + mikefile + ", stop testing");
+            return false;
+        }
+        Project project = Snapshot.loadProject(dir, profile);
+        if (buildDir == null) buildDir = project.getOptions().getBuildDir();
+        if (project.getProfile() != null) buildDir = buildDir + "/" + project.getProfile();
+        Path reportFile = report != null ? Paths.get(report).toAbsolutePath() : dir.resolve(buildDir).resolve(TestRunner.REPORT_FILE);
+        try {
+            return new TestRunner(project, Paths.get(buildDir), jobs, timeout, Trace.of(traceFile)).run(project.getTests(), reportFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public static void cache(Path dir, String profile, boolean clear) {
+        Path mikefile = dir.resolve(Project.MIKEFILE);
+        if (Files.notExists(mikefile)) {
+            System.out.println("No found " + mikefile);
             return;
         }
-        Generator.generate(Project.parseProject(dir));
-        System.out.println("Generating Makefile successfully");
+        ObjectCache cache = ObjectCache.of(dir, Snapshot.loadProject(dir, profile).getOptions());
+        if (cache == null) {
+            System.out.println("Object cache is disabled, set CACHE_DIR in " + Project.MIKEFILE + " to enable it");
+            return;
+        }
+        try {
+            if (clear) {
+                cache.clear();
+                System.out.println("Cleared object cache at " + cache.getDir());
+                return;
+            }
+            Properties stats = cache.getStats();
+            long hits = Long.parseLong(stats.getProperty("hits", "0"));
+            long misses = Long.parseLong(stats.getProperty("misses", "0"));
+            System.out.println("Object cache at " + cache.getDir());
+            System.out.println("\tHits      : " + hits);
+            System.out.println("\tMisses    : " + misses);
+            System.out.println("\tHit rate  : " + (hits + misses == 0 ? 0 : hits * 100 / (hits + misses)) + "%");
+            System.out.println("\tSize      : " + stats.getProperty("size", "0") + " / " + cache.getMaxSize() + " bytes");
+            System.out.println("\tEvictions : " + stats.getProperty("evictions", "0"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
@@ -0,0 +1,287 @@
+package com.github.mouse0w0.mike;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class NinjaBackend implements Backend {
+    public static final String NINJA_FILE = "build.ninja";
+
+    @Override
+    public String getFileName() {
+        return NINJA_FILE;
+    }
+
+    @Override
+    public void generate(Project project, PrintWriter writer) {
+        generateOptions(project, writer);
+        generateRules(project, writer);
+        generateRegenerate(project, writer);
+        generateScripts(project, writer);
+        generateTargets(project, writer);
+        generateTasks(project, writer);
+        generateTests(project, writer);
+        writer.println("default all");
+    }
+
+    private static void generateOptions(Project project, PrintWriter writer) {
+        Options options = project.getOptions();
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println("# OPTIONS");
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println("ninja_required_version = 1.7");
+        writer.println("builddir = " + escape(options.getBuildDir()));
+        writer.println("install_dir = " + escape(options.getInstallDir()));
+        writer.println("cxx = " + escape(options.getCxx()));
+        writer.println("cxxflags = " + escape(options.getCxxflags()));
+        writer.println("ld = " + escape(options.getLd()));
+        writer.println("ldflags = " + escape(options.getLdflags()));
+        writer.println("ar = " + escape(options.getAr()));
+        writer.println("arflags = " + escape(options.getArflags()));
+        writer.println("nm = " + escape(options.getNm()));
+        writer.println("mike = " + escape(options.getMike()));
+        writer.println("cache_dir = " + escape(options.getCacheDir()));
+        writer.println("cache_size = " + escape(options.getCacheSize()));
+        writer.println("workers = " + escape(options.getWorkers()));
+        writer.println();
+    }
+
+    private static void generateRules(Project project, PrintWriter writer) {
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println("# RULES");
+        writer.println("# --------------------------------------------------------------------------- ");
+        Options options = project.getOptions();
+        String cache = "";
+        if (!options.getCacheDir().isEmpty() || !options.getWorkers().isEmpty()) {
+            cache = "$mike compile" + (options.getCacheDir().isEmpty() ? "" : " --cache-dir=$cache_dir --cache-size=$cache_size")
+                    + (options.getWorkers().isEmpty() ? "" : " \"--workers=$workers\"") + " -- ";
+        }
+        writer.println("rule cxx");
+        writer.println("  command = " + cache + "$cxx $cxxflags $include_flags -MMD -MT $out -MF $out.d -o $out -c $in");
+        writer.println("  depfile = $out.d");
+        writer.println("  deps = gcc");
+        writer.println("  description = CXX $out");
+        writer.println();
+        for (Target target : project.getTargets()) {
+            if (target.getPch() != null) {
+                writer.println("rule pch");
+                writer.println("  command = $cxx $cxxflags $include_flags -x c++-header -MMD -MT $out -MF $out.d -o $out -c $in");
+                writer.println("  depfile = $out.d");
+                writer.println("  deps = gcc");
+                writer.println("  description = PCH $out");
+                writer.println();
+                break;
+            }
+        }
+        writer.println("rule ar");
+        writer.println("  command = rm -f $out && $ar $arflags $out $in");
+        writer.println("  description = AR $out");
+        writer.println();
+        writer.println("rule link");
+        writer.println("  command = $ld $ldflags -o $out $in $libs");
+        writer.println("  description = LINK $out");
+        writer.println();
+        writer.println("rule shared");
+        writer.println("  command = $cxx $ldflags -o $out -shared $in $libs");
+        writer.println("  description = LINK $out");
+        writer.println();
+        writer.println("rule interface");
+        writer.println("  command = " + BuildGraph.getInterfaceCommand("$nm", "$in", "$out", "$$"));
+        writer.println("  description = INTERFACE $out");
+        writer.println("  restat = 1");
+        writer.println();
+        writer.println("rule mike");
+        writer.println("  command = $mike");
+        writer.println("  description = Regenerating " + NINJA_FILE);
+        writer.println("  generator = 1");
+        writer.println("  restat = 1");
+        writer.println();
+        writer.println("rule run");
+        writer.println("  command = $cmd");
+        writer.println("  description = $desc");
+        writer.println("  pool = console");
+        writer.println();
+    }
+
+    private static void generateRegenerate(Project project, PrintWriter writer) {
+        Set<String> dirs = new TreeSet<>();
+        for (Target target : project.getTargets()) {
+            for (String dir : project.getSources().getDirectories(target)) {
+                if (!Sources.isCurrentPath(dir)) dirs.add(dir);
+            }
+        }
+        writer.print("build " + NINJA_FILE + ": mike " + Project.MIKEFILE);
+        if (!dirs.isEmpty()) {
+            writer.print(" |");
+            for (String dir : dirs) {
+                writer.print(" " + escapePath(dir));
+            }
+        }
+        writer.println();
+        if (project.getProfile() != null) {
+            writer.println("  mike = $mike --profile=" + escape(project.getProfile()));
+        }
+        writer.println();
+    }
+
+    private static void generateScripts(Project project, PrintWriter writer) {
+        if (project.getScripts().isEmpty()) return;
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println("# SCRIPTS");
+        writer.println("# --------------------------------------------------------------------------- ");
+        for (Script script : project.getScripts()) {
+            writer.println("build run/" + escapePath(script.getName()) + ": run");
+            writer.println("  cmd = " + escape(String.join(" && ", script.getCommands())));
+            writer.println("  desc = Running script " + escape(script.getName()));
+        }
+        writer.println();
+    }
+
+    private static void generateTargets(Project project, PrintWriter writer) {
+        Sources sources = project.getSources();
+        Set<String> emitted = new HashSet<>();
+        for (Target target : project.getTargets()) {
+            String name = target.getName();
+            String buildDir = project.getTargetDir(target);
+            String executable = project.getExecutable(target);
+            String staticLibrary = project.getStaticLibrary(target);
+            String sharedLibrary = project.getSharedLibrary(target);
+            writer.println("# --------------------------------------------------------------------------- ");
+            writer.println("# TARGET " + name.toUpperCase());
+            writer.println("# --------------------------------------------------------------------------- ");
+
+            String varIncludeFlags = name + "_include_flags";
+            writer.print(varIncludeFlags + " =");
+            for (String include : project.getIncludes(target)) {
+                writer.print(" -I" + escape(include));
+            }
+            writer.println();
+            writer.println();
+
+            String pchHeader = PrecompiledHeader.getHeader(project, target);
+            String pch = pchHeader == null ? null : escapePath(PrecompiledHeader.getOutput(pchHeader));
+            if (pch != null) {
+                writer.println("build " + pch + ": pch " + escapePath(pchHeader));
+                writer.println("  include_flags = $" + varIncludeFlags);
+                writer.println();
+            }
+
+            List<String> objects = new ArrayList<>();
+            for (String source : UnityBuild.getCompileUnits(project, target)) {
+                String object = escapePath(project.getObject(target, source));
+                objects.add(object);
+                if (!emitted.add(object)) continue;
+                if (pch != null) {
+                    writer.println("build " + object + ": cxx " + escapePath(source) + " || " + pch);
+                    writer.println("  include_flags = $" + varIncludeFlags + " -include " + escape(pchHeader));
+                } else {
+                    writer.println("build " + object + ": cxx " + escapePath(source));
+                    writer.println("  include_flags = $" + varIncludeFlags);
+                }
+            }
+            String objectList = String.join(" ", objects);
+            writer.println();
+
+            StringBuilder depends = new StringBuilder();
+            for (Target dependency : project.getTransitiveDependencies(target)) {
+                depends.append(depends.length() == 0 ? " | " : " ").append(escapePath(project.getLinkDependency(dependency)));
+            }
+            String libs = escape(String.join(" ", project.getLinkLibraries(target)));
+
+            List<String> outputs = new ArrayList<>();
+            if (target.isExecutable()) {
+                outputs.add(escapePath(executable));
+                writer.println("build " + escapePath(executable) + ": link " + objectList + depends);
+                writer.println("  libs = " + libs);
+            }
+            if (target.isStaticLibrary()) {
+                outputs.add(escapePath(staticLibrary));
+                writer.println("build " + escapePath(staticLibrary) + ": ar " + objectList);
+            }
+            if (target.isSharedLibrary()) {
+                outputs.add(escapePath(sharedLibrary));
+                writer.println("build " + escapePath(sharedLibrary) + ": shared " + objectList + depends);
+                writer.println("  libs = " + libs);
+                writer.println("build " + escapePath(project.getInterfaceStamp(target)) + ": interface " + escapePath(sharedLibrary));
+            }
+            for (Target dependency : project.getDependencies(target)) {
+                outputs.add(escapePath(dependency.getName() + "/all"));
+            }
+            writer.println("build " + escapePath(name + "/all") + ": phony " + String.join(" ", outputs));
+            writer.println();
+
+            StringBuilder clean = new StringBuilder("rm -rf " + escape(buildDir));
+            if (pchHeader != null) clean.append(" && rm -f ").append(escape(PrecompiledHeader.getOutput(pchHeader)));
+            if (target.isExecutable()) clean.append(" && rm -f ").append(escape(executable));
+            if (target.isStaticLibrary()) clean.append(" && rm -f ").append(escape(staticLibrary));
+            if (target.isSharedLibrary()) clean.append(" && rm -f ").append(escape(sharedLibrary));
+            generateTask(writer, name + "/clean", null, clean.toString(), "Cleaning target " + name);
+
+            String flags = " --build-dir=" + escape(project.getOptions().getBuildDir())
+                    + (project.getProfile() == null ? "" : " --profile=" + escape(project.getProfile())) + " --install-dir=$install_dir " + escape(name);
+            generateTask(writer, name + "/install", name + "/all", "$mike install" + flags, "Installing target " + name);
+            generateTask(writer, name + "/uninstall", null, "$mike uninstall" + flags, "Uninstalling target " + name);
+
+            String pack = "$mike package --build-dir=" + escape(project.getOptions().getBuildDir())
+                    + (project.getProfile() == null ? "" : " --profile=" + escape(project.getProfile())) + " " + escape(name);
+            generateTask(writer, name + "/package", name + "/all", pack, "Packaging target " + name);
+            writer.println();
+        }
+    }
+
+    private static void generateTask(PrintWriter writer, String task, String dependency, String command, String description) {
+        writer.print("build " + escapePath(task) + ": run");
+        if (dependency != null) writer.print(" | " + escapePath(dependency));
+        writer.println();
+        writer.println("  cmd = " + (command.isEmpty() ? "true" : command));
+        writer.println("  desc = " + escape(description));
+    }
+
+    private static void generateTasks(Project project, PrintWriter writer) {
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println("# TASKS");
+        writer.println("# --------------------------------------------------------------------------- ");
+        for (String task : new String[]{"all", "clean", "install", "uninstall", "package"}) {
+            writer.print("build " + task + (task.equals("clean") ? ": run |" : ": phony"));
+            for (Target target : project.getTargets()) {
+                writer.print(" " + escapePath(target.getName() + "/" + task));
+            }
+            writer.println();
+            if (task.equals("clean")) {
+                writer.println("  cmd = rm -rf " + escape(project.getProfileDir() + "/" + ObjectPool.POOL_DIR));
+                writer.println("  desc = Cleaning shared objects");
+            }
+        }
+        writer.println();
+    }
+
+    private static void generateTests(Project project, PrintWriter writer) {
+        if (project.getTests().isEmpty()) return;
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println("# TESTS");
+        writer.println("# --------------------------------------------------------------------------- ");
+        Set<String> targets = new LinkedHashSet<>();
+        for (Test test : project.getTests()) {
+            Target target = project.getTarget(test.getTarget());
+            targets.add(escapePath(target != null ? project.getExecutable(target) : test.getTarget()));
+        }
+        writer.println("build test: run | " + String.join(" ", targets));
+        writer.print("  cmd = $mike test --build-dir=$builddir");
+        if (project.getProfile() != null) writer.print(" --profile=" + escape(project.getProfile()));
+        writer.println();
+        writer.println("  desc = Testing project");
+        writer.println();
+    }
+
+    private static String escape(String value) {
+        return value.replace("$", "$$");
+    }
+
+    private static String escapePath(String path) {
+        return escape(path).replace(" ", "$ ").replace(":", "$:");
+    }
+}
@@ -0,0 +1,275 @@
+package com.github.mouse0w0.mike;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class ObjectCache {
+    private static final String STATS_FILE = "stats";
+    private static final String LOCK_FILE = "lock";
+
+    private final Path dir;
+    private final long maxSize;
+
+    public ObjectCache(Path dir, long maxSize) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+    }
+
+    public static ObjectCache of(Path root, Options options) {
+        if (options.getCacheDir().isEmpty()) return null;
+        return new ObjectCache(resolveDir(root, options.getCacheDir()), parseSize(options.getCacheSize()));
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public int compile(List<String> command, Path workDir, OutputStream log) throws IOException, InterruptedException {
+        return compile(command, Collections.emptyList(), null, workDir, log);
+    }
+
+    public int compile(List<String> command, List<String> inputs, RemoteExecutor remote, Path workDir, OutputStream log) throws IOException, InterruptedException {
+        int outputIndex = command.indexOf("-o");
+        int compileIndex = command.indexOf("-c");
+        if (outputIndex < 0 || outputIndex + 1 >= command.size() || compileIndex < 0) {
+            return RemoteExecutor.compile(remote, command, inputs, workDir, log);
+        }
+        Path output = workDir.resolve(command.get(outputIndex + 1));
+
+        List<String> preprocess = new ArrayList<>(command);
+        preprocess.set(compileIndex, "-E");
+        preprocess.remove(outputIndex + 1);
+        preprocess.remove(outputIndex);
+
+        MessageDigest digest = FileUtils.newDigest();
+        for (int i = 0; i < preprocess.size(); i++) {
+            String argument = preprocess.get(i);
+            if (argument.equals("-MD") || argument.equals("-MMD")) continue;
+            if (argument.equals("-MF") || argument.equals("-MT") || argument.equals("-MQ")) {
+                i++;
+                continue;
+            }
+            digest.update(argument.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        if (run(preprocess, workDir, null, digest) != 0) {
+            return RemoteExecutor.compile(remote, command, inputs, workDir, log);
+        }
+        String key = FileUtils.toHex(digest.digest());
+
+        Path object = getObject(key);
+        Path stderr = object.resolveSibling(key + ".log");
+        if (Files.exists(object) && restore(object, stderr, output, log)) {
+            update(1, 0, 0);
+            Trace.annotate(Trace.CACHE, "hit");
+            return 0;
+        }
+
+        Trace.annotate(Trace.CACHE, "miss");
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        int exitCode = RemoteExecutor.compile(remote, command, inputs, workDir, messages);
+        if (log != null) messages.writeTo(log);
+        if (exitCode != 0) {
+            update(0, 1, 0);
+            return exitCode;
+        }
+
+        Files.createDirectories(object.getParent());
+        long size = Files.size(output);
+        if (messages.size() > 0) {
+            Path temp = FileUtils.getUniqueTempFile(stderr);
+            Files.write(temp, messages.toByteArray());
+            Files.move(temp, stderr, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            size += messages.size();
+        }
+        Path tempObject = FileUtils.getUniqueTempFile(object);
+        Files.copy(output, tempObject);
+        Files.move(tempObject, object, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        update(0, 1, size);
+        return 0;
+    }
+
+    private static boolean restore(Path object, Path stderr, Path output, OutputStream log) throws IOException {
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        Path temp = FileUtils.getTempFile(output);
+        byte[] messages;
+        try {
+            Files.copy(object, temp, StandardCopyOption.REPLACE_EXISTING);
+            messages = Files.exists(stderr) ? Files.readAllBytes(stderr) : null;
+        } catch (NoSuchFileException e) {
+            // Evicted by a concurrent build between the lookup and the copy.
+            Files.deleteIfExists(temp);
+            return false;
+        }
+        Files.move(temp, output, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        try {
+            Files.setLastModifiedTime(object, now);
+            if (messages != null) Files.setLastModifiedTime(stderr, now);
+        } catch (NoSuchFileException ignored) {
+        }
+        if (messages != null && log != null) log.write(messages);
+        return true;
+    }
+
+    public Properties getStats() throws IOException {
+        Properties stats = new Properties();
+        Path file = dir.resolve(STATS_FILE);
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                stats.load(in);
+            }
+        }
+        return stats;
+    }
+
+    public synchronized void clear() throws IOException {
+        Files.createDirectories(dir);
+        try (FileChannel channel = FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                for (Path file : listEntries()) {
+                    Files.deleteIfExists(file);
+                }
+                Files.deleteIfExists(dir.resolve(STATS_FILE));
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private Path getObject(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key + ".o");
+    }
+
+    private synchronized void update(long hits, long misses, long added) throws IOException {
+        Files.createDirectories(dir);
+        try (FileChannel channel = FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                Properties stats = getStats();
+                stats.setProperty("hits", Long.toString(getLong(stats, "hits") + hits));
+                stats.setProperty("misses", Long.toString(getLong(stats, "misses") + misses));
+                long size = stats.containsKey("size") ? getLong(stats, "size") + added : computeSize();
+                if (size > maxSize) {
+                    long evicted = evict(size);
+                    size = computeSize();
+                    stats.setProperty("evictions", Long.toString(getLong(stats, "evictions") + evicted));
+                }
+                stats.setProperty("size", Long.toString(size));
+                Path file = dir.resolve(STATS_FILE);
+                Path temp = FileUtils.getTempFile(file);
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    stats.store(out, null);
+                }
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private long evict(long size) throws IOException {
+        List<Path> entries = listEntries();
+        entries.sort(Comparator.comparing(ObjectCache::getLastModifiedTime));
+        long target = maxSize * 9 / 10;
+        long evicted = 0;
+        for (Path entry : entries) {
+            if (size <= target) break;
+            size -= Files.size(entry);
+            Files.deleteIfExists(entry);
+            if (entry.getFileName().toString().endsWith(".o")) evicted++;
+        }
+        return evicted;
+    }
+
+    private long computeSize() throws IOException {
+        long size = 0;
+        for (Path entry : listEntries()) {
+            size += Files.size(entry);
+        }
+        return size;
+    }
+
+    private List<Path> listEntries() throws IOException {
+        if (Files.notExists(dir)) return new ArrayList<>();
+        try (Stream<Path> stream = Files.walk(dir, 2)) {
+            return stream.filter(path -> !path.getParent().equals(dir) && Files.isRegularFile(path))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static FileTime getLastModifiedTime(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long getLong(Properties properties, String key) {
+        return Long.parseLong(properties.getProperty(key, "0"));
+    }
+
+    private static int run(List<String> command, Path workDir, OutputStream output, MessageDigest digest) throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(command).directory(workDir.toFile());
+        if (digest == null) builder.redirectErrorStream(true);
+        else builder.redirectError(ProcessBuilder.Redirect.to(new File("/dev/null")));
+        Process process = Trace.start(builder);
+        process.getOutputStream().close();
+        try (InputStream in = process.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                if (digest != null) digest.update(buffer, 0, n);
+                if (output != null) output.write(buffer, 0, n);
+            }
+        }
+        return process.waitFor();
+    }
+
+    static Path resolveDir(Path root, String dir) {
+        if (dir.equals("~") || dir.startsWith("~/")) {
+            return Paths.get(System.getProperty("user.home") + dir.substring(1));
+        }
+        return root.resolve(dir);
+    }
+
+    static long parseSize(String size) {
+        size = size.trim().toUpperCase();
+        if (size.endsWith("B")) size = size.substring(0, size.length() - 1);
+        long unit = 1;
+        if (size.endsWith("K")) unit = 1L << 10;
+        else if (size.endsWith("M")) unit = 1L << 20;
+        else if (size.endsWith("G")) unit = 1L << 30;
+        else if (size.endsWith("T")) unit = 1L << 40;
+        if (unit != 1) size = size.substring(0, size.length() - 1).trim();
+        return Long.parseLong(size) * unit;
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.mouse0w0.mike;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ObjectPool {
+    public static final String POOL_DIR = "_shared";
+
+    private final Map<String, List<String>> pools = new LinkedHashMap<>();
+    private final Map<Target, Map<String, String>> objects = new HashMap<>();
+
+    private ObjectPool() {
+    }
+
+    public static ObjectPool create(Project project) {
+        ObjectPool pool = new ObjectPool();
+        Map<String, Integer> counts = new HashMap<>();
+        Map<Target, String> signatures = new HashMap<>();
+        for (Target target : project.getTargets()) {
+            if (target.getPch() != null) continue;
+            List<String> includes = project.getIncludes(target);
+            String signature = FileUtils.toHex(FileUtils.newDigest()
+                    .digest(String.join("\0", includes).getBytes(StandardCharsets.UTF_8))).substring(0, 8);
+            signatures.put(target, signature);
+            pool.pools.putIfAbsent(signature, includes);
+            for (String unit : UnityBuild.getCompileUnits(project, target)) {
+                counts.merge(signature + "\0" + unit, 1, Integer::sum);
+            }
+        }
+        for (Map.Entry<Target, String> entry : signatures.entrySet()) {
+            Map<String, String> shared = new HashMap<>();
+            for (String unit : UnityBuild.getCompileUnits(project, entry.getKey())) {
+                if (counts.get(entry.getValue() + "\0" + unit) > 1) {
+                    shared.put(unit, entry.getValue());
+                }
+            }
+            if (!shared.isEmpty()) pool.objects.put(entry.getKey(), shared);
+        }
+        Set<String> used = new HashSet<>();
+        for (Map<String, String> shared : pool.objects.values()) {
+            used.addAll(shared.values());
+        }
+        pool.pools.keySet().retainAll(used);
+        return pool;
+    }
+
+    public Map<String, List<String>> getPools() {
+        return Collections.unmodifiableMap(pools);
+    }
+
+    public String getPool(Target target, String unit) {
+        Map<String, String> shared = objects.get(target);
+        return shared == null ? null : shared.get(unit);
+    }
+
+    public boolean isShared(Target target) {
+        return objects.containsKey(target);
+    }
+}
@@ -2,25 +2,102 @@ package com.github.mouse0w0.mike;
 
 import com.moandjiezana.toml.Toml;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
 public class Options {
-    private String buildDir;
-    private String installDir;
-    private String cxx;
-    private String cxxflags;
-    private String ld;
-    private String ldflags;
-    private String ar;
-    private String arflags;
+    private final String buildDir;
+    private final String installDir;
+    private final String cxx;
+    private final String cxxflags;
+    private final String ld;
+    private final String ldflags;
+    private final String ar;
+    private final String arflags;
+    private final String nm;
+    private final String backend;
+    private final String mike;
+    private final String cacheDir;
+    private final String cacheSize;
+    private final String profile;
+    private final String workers;
 
     public Options(Toml config) {
-        this.buildDir = config.getString("BUILD_DIR", "build");
-        this.installDir = config.getString("INSTALL_DIR", "/usr/local");
-        this.cxx = config.getString("CXX", "g++");
-        this.cxxflags = config.getString("CXXFLAGS", "-Wall");
-        this.ld = config.getString("LD", "g++");
-        this.ldflags = config.getString("LDFLAGS", "");
-        this.ar = config.getString("AR", "ar");
-        this.arflags = config.getString("ARFLAGS", "rc");
+        this((Function<String, String>) config::getString);
+    }
+
+    public Options(Map<String, String> config) {
+        this((Function<String, String>) config::get);
+    }
+
+    public Options(Toml config, Options parent) {
+        this((Function<String, String>) config::getString, parent);
+    }
+
+    public Options(Map<String, String> config, Options parent) {
+        this((Function<String, String>) config::get, parent);
+    }
+
+    private Options(Function<String, String> config) {
+        this.buildDir = get(config, "BUILD_DIR", "build");
+        this.installDir = get(config, "INSTALL_DIR", "/usr/local");
+        this.cxx = get(config, "CXX", "g++");
+        this.cxxflags = get(config, "CXXFLAGS", "-Wall");
+        this.ld = get(config, "LD", "g++");
+        this.ldflags = get(config, "LDFLAGS", "");
+        this.ar = get(config, "AR", "ar");
+        this.arflags = get(config, "ARFLAGS", "rc");
+        this.nm = get(config, "NM", "nm");
+        this.backend = get(config, "BACKEND", "make");
+        this.mike = get(config, "MIKE", "mike");
+        this.cacheDir = get(config, "CACHE_DIR", "");
+        this.cacheSize = get(config, "CACHE_SIZE", "5G");
+        this.profile = get(config, "PROFILE", "");
+        this.workers = get(config, "WORKERS", "");
+    }
+
+    private Options(Function<String, String> config, Options parent) {
+        this.buildDir = parent.buildDir;
+        this.installDir = get(config, "INSTALL_DIR", parent.installDir);
+        this.cxx = get(config, "CXX", parent.cxx);
+        this.cxxflags = get(config, "CXXFLAGS", parent.cxxflags);
+        this.ld = get(config, "LD", parent.ld);
+        this.ldflags = get(config, "LDFLAGS", parent.ldflags);
+        this.ar = get(config, "AR", parent.ar);
+        this.arflags = get(config, "ARFLAGS", parent.arflags);
+        this.nm = get(config, "NM", parent.nm);
+        this.backend = parent.backend;
+        this.mike = parent.mike;
+        this.cacheDir = get(config, "CACHE_DIR", parent.cacheDir);
+        this.cacheSize = get(config, "CACHE_SIZE", parent.cacheSize);
+        this.profile = parent.profile;
+        this.workers = get(config, "WORKERS", parent.workers);
+    }
+
+    public Map<String, String> toMap() {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("BUILD_DIR", buildDir);
+        map.put("INSTALL_DIR", installDir);
+        map.put("CXX", cxx);
+        map.put("CXXFLAGS", cxxflags);
+        map.put("LD", ld);
+        map.put("LDFLAGS", ldflags);
+        map.put("AR", ar);
+        map.put("ARFLAGS", arflags);
+        map.put("NM", nm);
+        map.put("BACKEND", backend);
+        map.put("MIKE", mike);
+        map.put("CACHE_DIR", cacheDir);
+        map.put("CACHE_SIZE", cacheSize);
+        map.put("PROFILE", profile);
+        map.put("WORKERS", workers);
+        return map;
+    }
+
+    private static String get(Function<String, String> config, String key, String defaultValue) {
+        String value = config.apply(key);
+        return value != null ? value : defaultValue;
     }
 
     public String getBuildDir() {
@@ -54,4 +131,32 @@ public class Options {
     public String getArflags() {
         return arflags;
     }
+
+    public String getNm() {
+        return nm;
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public String getMike() {
+        return mike;
+    }
+
+    public String getCacheDir() {
+        return cacheDir;
+    }
+
+    public String getCacheSize() {
+        return cacheSize;
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public String getWorkers() {
+        return workers;
+    }
 }
@@ -0,0 +1,280 @@
+package com.github.mouse0w0.mike;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+public class Packager {
+    public static final String STAMP_FILE = "package.hash";
+
+    private static final int BLOCK_SIZE = 1 << 20;
+    private static final int RECORD_SIZE = 512;
+    private static final int DIRECTORY_MODE = 0755;
+    private static final int FILE_MODE = 0644;
+    private static final int EXECUTABLE_MODE = 0755;
+
+    private final Project project;
+    private final String buildDir;
+    private final int parallelism;
+
+    public Packager(Project project, String buildDir, int parallelism) {
+        this.project = project;
+        this.buildDir = buildDir;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public static String getArchive(Project project, Target target) {
+        return project.getOutputDir(target) + target.getName() + ".tar.gz";
+    }
+
+    public boolean pack(Target target) throws IOException {
+        Path root = project.getRoot();
+        Map<String, Entry> entries = getEntries(target);
+        String name = target.getName();
+        for (Entry entry : entries.values()) {
+            if (entry.file != null && Files.notExists(root.resolve(entry.file))) {
+                throw new IllegalStateException("No found " + entry.file + ", build target " + name + " first");
+            }
+        }
+
+        MessageDigest digest = FileUtils.newDigest();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Integer.toString(entry.getValue().mode).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            if (entry.getValue().file != null) {
+                digest.update(FileUtils.newDigest().digest(Files.readAllBytes(root.resolve(entry.getValue().file))));
+            }
+        }
+        String hash = FileUtils.toHex(digest.digest());
+
+        String profileDir = project.getProfile() == null ? buildDir : buildDir + "/" + project.getProfile();
+        Path stamp = root.resolve(profileDir).resolve(name).resolve(STAMP_FILE);
+        Path archive = root.resolve(getArchive(project, target));
+        if (Files.exists(archive) && Files.exists(stamp)
+                && new String(Files.readAllBytes(stamp), StandardCharsets.UTF_8).trim().equals(hash)) {
+            return false;
+        }
+
+        if (archive.getParent() != null) Files.createDirectories(archive.getParent());
+        Path temp = FileUtils.getUniqueTempFile(archive);
+        try (OutputStream out = new ParallelGzipOutputStream(Files.newOutputStream(temp), parallelism)) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                writeEntry(out, entry.getKey(), entry.getValue());
+            }
+            out.write(new byte[RECORD_SIZE * 2]);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, archive, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Files.createDirectories(stamp.getParent());
+        FileUtils.writeIfChanged(stamp, (hash + "\n").getBytes(StandardCharsets.UTF_8));
+        return true;
+    }
+
+    private Map<String, Entry> getEntries(Target target) {
+        String name = target.getName();
+        Map<String, Entry> entries = new TreeMap<>();
+        entries.put(name + "/", new Entry(null, DIRECTORY_MODE));
+        entries.put(name + "/include/", new Entry(null, DIRECTORY_MODE));
+        for (Map.Entry<String, String> entry : Installer.getLayout(project, target).entrySet()) {
+            String path = entry.getKey();
+            entries.put(name + "/" + path.substring(0, path.indexOf('/') + 1), new Entry(null, DIRECTORY_MODE));
+            entries.put(name + "/" + path, new Entry(entry.getValue(), Installer.isExecutable(path) ? EXECUTABLE_MODE : FILE_MODE));
+        }
+        return entries;
+    }
+
+    private void writeEntry(OutputStream out, String path, Entry entry) throws IOException {
+        Path file = entry.file == null ? null : project.getRoot().resolve(entry.file);
+        long size = file == null ? 0 : Files.size(file);
+        byte[] header = new byte[RECORD_SIZE];
+        String name = path;
+        String prefix = "";
+        if (name.getBytes(StandardCharsets.UTF_8).length > 100) {
+            int index = path.lastIndexOf('/', path.length() - 2);
+            while (index > 0 && path.substring(index + 1).getBytes(StandardCharsets.UTF_8).length > 100) {
+                index = path.lastIndexOf('/', index - 1);
+            }
+            prefix = index > 0 ? path.substring(0, index) : "";
+            name = path.substring(index + 1);
+            if (index <= 0 || prefix.getBytes(StandardCharsets.UTF_8).length > 155) {
+                throw new IllegalArgumentException("Path too long for tar archive: " + path);
+            }
+        }
+        putString(header, 0, 100, name);
+        putOctal(header, 100, 8, entry.mode);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, 0);
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        header[156] = (byte) (file == null ? '5' : '0');
+        putString(header, 257, 6, "ustar");
+        putString(header, 263, 2, "00");
+        putString(header, 345, 155, prefix);
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        putOctal(header, 148, 7, checksum);
+        header[154] = 0;
+        out.write(header);
+        if (file == null) return;
+
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            long remaining = size;
+            int n;
+            while (remaining > 0 && (n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) > 0) {
+                out.write(buffer, 0, n);
+                remaining -= n;
+            }
+            if (remaining > 0) throw new IOException(file + " changed while packaging");
+        }
+        int padding = (int) ((RECORD_SIZE - size % RECORD_SIZE) % RECORD_SIZE);
+        out.write(new byte[padding]);
+    }
+
+    private static void putString(byte[] header, int offset, int length, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, header, offset, Math.min(bytes.length, length));
+    }
+
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        if (octal.length() > length - 1) throw new IllegalArgumentException("Value too large for tar header: " + value);
+        StringBuilder builder = new StringBuilder();
+        for (int i = octal.length(); i < length - 1; i++) {
+            builder.append('0');
+        }
+        putString(header, offset, length - 1, builder.append(octal).toString());
+    }
+
+    private static class Entry {
+        private final String file;
+        private final int mode;
+
+        private Entry(String file, int mode) {
+            this.file = file;
+            this.mode = mode;
+        }
+    }
+
+    private static class ParallelGzipOutputStream extends OutputStream {
+        private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+        private final OutputStream out;
+        private final int parallelism;
+        private final ExecutorService executor;
+        private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+        private byte[] block = new byte[BLOCK_SIZE];
+        private int count;
+
+        private ParallelGzipOutputStream(OutputStream out, int parallelism) {
+            this.out = out;
+            this.parallelism = parallelism;
+            this.executor = Executors.newFixedThreadPool(parallelism);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                int n = Math.min(length, block.length - count);
+                System.arraycopy(bytes, offset, block, count, n);
+                count += n;
+                offset += n;
+                length -= n;
+                if (count == block.length) submit();
+            }
+        }
+
+        private void submit() throws IOException {
+            byte[] data = block;
+            int size = count;
+            pending.add(executor.submit(() -> compress(data, size)));
+            block = new byte[BLOCK_SIZE];
+            count = 0;
+            while (pending.size() > parallelism * 2) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            try {
+                out.write(pending.poll().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while compressing", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Cannot compress archive", e.getCause());
+            }
+        }
+
+        private static byte[] compress(byte[] data, int size) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(size / 2 + 64);
+            buffer.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                deflater.setInput(data, 0, size);
+                deflater.finish();
+                byte[] chunk = new byte[8192];
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(chunk);
+                    buffer.write(chunk, 0, n);
+                }
+            } finally {
+                deflater.end();
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, size);
+            writeInt(buffer, (int) crc.getValue());
+            writeInt(buffer, size);
+            return buffer.toByteArray();
+        }
+
+        private static void writeInt(ByteArrayOutputStream out, int value) {
+            out.write(value);
+            out.write(value >>> 8);
+            out.write(value >>> 16);
+            out.write(value >>> 24);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (count > 0) submit();
+                while (!pending.isEmpty()) {
+                    drain();
+                }
+            } finally {
+                executor.shutdownNow();
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.mouse0w0.mike;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class PrecompiledHeader {
+    public static final String PCH_DIR = "_pch";
+
+    public static String getHeader(Project project, Target target) {
+        if (target.getPch() == null) return null;
+        return getHeader(project.getProfileDir(), target);
+    }
+
+    public static String getContent(Project project, Target target) {
+        Path root = project.getRoot().toAbsolutePath().normalize();
+        Path file = root.resolve(getHeader(project, target)).normalize();
+        String include = file.getParent().relativize(root.resolve(target.getPch()).normalize()).toString().replace('\\', '/');
+        return "// Generated by Mike, do not edit\n#include \"" + include + "\"\n";
+    }
+
+    public static void write(Project project) {
+        Path root = project.getRoot().toAbsolutePath().normalize();
+        try {
+            for (Project variant : project.getVariants()) {
+                for (Target target : variant.getTargets()) {
+                    if (target.getPch() == null) continue;
+                    Path file = root.resolve(getHeader(variant, target)).normalize();
+                    Files.createDirectories(file.getParent());
+                    FileUtils.writeIfChanged(file, getContent(variant, target).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static String getHeader(String dir, Target target) {
+        return dir + "/" + PCH_DIR + "/" + target.getName() + "/" + Paths.get(target.getPch()).getFileName();
+    }
+
+    public static String getOutput(String header) {
+        return header + ".gch";
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.mouse0w0.mike;
+
+public class Profile {
+    private final String name;
+    private final Options options;
+
+    public Profile(String name, Options options) {
+        this.name = name;
+        this.options = options;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Options getOptions() {
+        return options;
+    }
+}
@@ -4,23 +4,56 @@ import com.moandjiezana.toml.Toml;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 public class Project {
 
     public static final String MIKEFILE = "mike.toml";
 
-    private Path root;
-    private Options options;
-    private List<Script> scripts;
-    private List<Target> targets;
-    private List<Test> tests;
+    private final Path root;
+    private final Options options;
+    private final Options baseOptions;
+    private final String profile;
+    private final List<Profile> profiles;
+    private final List<Script> scripts;
+    private final List<Target> targets;
+    private final Map<String, Target> targetMap;
+    private final List<Test> tests;
+    private Sources sources;
+    private ObjectPool objectPool;
+    private UnityBuild unityBuild;
+    private final Map<Target, List<Target>> transitiveDependencies = new ConcurrentHashMap<>();
+    private final Map<Target, List<String>> includes = new ConcurrentHashMap<>();
+
+    private Project(Path root, Options baseOptions, List<Profile> profiles, List<Script> scripts, List<Target> targets,
+                    Map<String, Target> targetMap, List<Test> tests, String profile, Sources sources, ObjectPool objectPool) {
+        this.root = root;
+        this.baseOptions = baseOptions;
+        this.profiles = profiles;
+        this.scripts = scripts;
+        this.targets = targets;
+        this.targetMap = targetMap;
+        this.tests = tests;
+        this.profile = profile.isEmpty() ? null : profile;
+        this.options = profile.isEmpty() ? baseOptions : findProfile(profiles, profile).getOptions();
+        this.sources = sources;
+        this.objectPool = objectPool;
+    }
 
     public Path getRoot() {
         return root;
@@ -30,10 +63,140 @@ public class Project {
         return options;
     }
 
+    public Options getBaseOptions() {
+        return baseOptions;
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public List<Profile> getProfiles() {
+        return profiles;
+    }
+
+    public String getProfileDir() {
+        return profile == null ? options.getBuildDir() : options.getBuildDir() + "/" + profile;
+    }
+
+    public String getTargetDir(Target target) {
+        return getProfileDir() + "/" + target.getName();
+    }
+
+    public String getOutputDir(Target target) {
+        return profile == null ? "" : getTargetDir(target) + "/";
+    }
+
+    public String getExecutable(Target target) {
+        return getOutputDir(target) + target.getName();
+    }
+
+    public String getStaticLibrary(Target target) {
+        return getOutputDir(target) + target.getName() + ".a";
+    }
+
+    public String getSharedLibrary(Target target) {
+        return getOutputDir(target) + target.getName() + ".so";
+    }
+
+    public String getLibraryOutput(Target target) {
+        return target.isStaticLibrary() ? getStaticLibrary(target) : getSharedLibrary(target);
+    }
+
+    public String getInterfaceStamp(Target target) {
+        return getTargetDir(target) + "/" + target.getName() + ".so.interface";
+    }
+
+    public String getLinkDependency(Target target) {
+        return target.isStaticLibrary() ? getStaticLibrary(target) : getInterfaceStamp(target);
+    }
+
+    public Project withProfile(String profile) {
+        return new Project(root, baseOptions, profiles, scripts, targets, targetMap, tests, profile, getSources(), getObjectPool());
+    }
+
+    public List<Project> getVariants() {
+        List<Project> variants = new ArrayList<>();
+        variants.add(withProfile(""));
+        for (Profile profile : profiles) {
+            variants.add(withProfile(profile.getName()));
+        }
+        return variants;
+    }
+
     public List<Target> getTargets() {
         return targets;
     }
 
+    public Target getTarget(String name) {
+        return targetMap.get(name);
+    }
+
+    public List<Target> getDependencies(Target target) {
+        List<Target> dependencies = new ArrayList<>();
+        for (String library : target.getLibraries()) {
+            Target dependency = targetMap.get(library);
+            if (dependency != null) dependencies.add(dependency);
+        }
+        return dependencies;
+    }
+
+    public List<Target> getTransitiveDependencies(Target target) {
+        List<Target> result = transitiveDependencies.get(target);
+        if (result != null) return result;
+        Set<Target> dependencies = new LinkedHashSet<>();
+        for (Target dependency : getDependencies(target)) {
+            dependencies.add(dependency);
+            dependencies.addAll(getTransitiveDependencies(dependency));
+        }
+        result = Collections.unmodifiableList(new ArrayList<>(dependencies));
+        transitiveDependencies.put(target, result);
+        return result;
+    }
+
+    public List<String> getIncludes(Target target) {
+        List<String> result = includes.get(target);
+        if (result != null) return result;
+        Set<String> unique = new LinkedHashSet<>(target.getIncludes());
+        for (Target dependency : getDependencies(target)) {
+            unique.addAll(getIncludes(dependency));
+        }
+        result = Collections.unmodifiableList(new ArrayList<>(unique));
+        includes.put(target, result);
+        return result;
+    }
+
+    public List<String> getLinkLibraries(Target target) {
+        return getLinkLibraries(target, this::getLibraryOutput);
+    }
+
+    public List<String> getLinkLibraries(Target target, Function<Target, String> output) {
+        return new ArrayList<>(getLinkLibraries(target, output, new HashMap<>()));
+    }
+
+    private List<String> getLinkLibraries(Target target, Function<Target, String> output, Map<Target, List<String>> expanded) {
+        List<String> result = expanded.get(target);
+        if (result != null) return result;
+        List<String> libraries = new ArrayList<>();
+        for (String library : target.getLibraries()) {
+            Target dependency = targetMap.get(library);
+            if (dependency != null) {
+                libraries.add(output.apply(dependency));
+                libraries.addAll(getLinkLibraries(dependency, output, expanded));
+            } else {
+                libraries.add(library);
+            }
+        }
+        Set<String> unique = new LinkedHashSet<>();
+        for (int i = libraries.size() - 1; i >= 0; i--) {
+            unique.add(libraries.get(i));
+        }
+        result = new ArrayList<>(unique);
+        Collections.reverse(result);
+        expanded.put(target, result);
+        return result;
+    }
+
     public List<Script> getScripts() {
         return scripts;
     }
@@ -42,25 +205,108 @@ public class Project {
         return tests;
     }
 
+    public synchronized Sources getSources() {
+        if (sources == null) {
+            sources = new Sources(root, options.getBuildDir());
+        }
+        return sources;
+    }
+
+    public synchronized ObjectPool getObjectPool() {
+        if (objectPool == null) {
+            objectPool = ObjectPool.create(this);
+        }
+        return objectPool;
+    }
+
+    public synchronized UnityBuild getUnityBuild() {
+        if (unityBuild == null) {
+            unityBuild = UnityBuild.create(this);
+        }
+        return unityBuild;
+    }
+
+    public String getObject(Target target, String unit) {
+        String pool = getObjectPool().getPool(target, unit);
+        String dir = pool != null ? getProfileDir() + "/" + ObjectPool.POOL_DIR + "/" + pool : getTargetDir(target);
+        return dir + "/" + unit + ".o";
+    }
+
     public static Project parseProject(Path root) {
-        Project project = new Project();
-        Toml config = readConfig(root.resolve(MIKEFILE));
-        project.root = root;
-        project.options = new Options(config);
-        project.scripts = parseScripts(config.getTable("scripts"));
-        project.targets = parseTargets(config.getTable("targets"));
-        project.tests = parseTests(config.getTable("tests"));
-        return project;
+        return parseProject(root, null);
     }
 
-    private static Toml readConfig(Path file) {
-        try (BufferedReader reader = Files.newBufferedReader(file)) {
-            return new Toml().read(reader);
+    public static Project parseProject(Path root, String profile) {
+        try (BufferedReader reader = Files.newBufferedReader(root.resolve(MIKEFILE))) {
+            return readProject(root, reader, profile);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
+    public static Project parseProject(Path root, String config, String profile) {
+        return readProject(root, new StringReader(config), profile);
+    }
+
+    public static Project readProject(Path root, Reader reader, String profile) {
+        Toml config = new Toml().read(reader);
+        Options options = new Options(config);
+        return create(root, options, parseProfiles(config.getTable("profiles"), options), parseScripts(config.getTable("scripts")),
+                parseTargets(config.getTable("targets")), parseTests(config.getTable("tests")), profile);
+    }
+
+    private static Project create(Path root, Options options, List<Profile> profiles, List<Script> scripts,
+                                  List<Target> targets, List<Test> tests, String profile) {
+        Map<String, Target> targetMap = new HashMap<>();
+        for (Target target : targets) {
+            if (targetMap.put(target.getName(), target) != null) {
+                throw new IllegalArgumentException("Duplicate target " + target.getName());
+            }
+        }
+        Project project = new Project(root, options, Collections.unmodifiableList(new ArrayList<>(profiles)),
+                Collections.unmodifiableList(new ArrayList<>(scripts)), Collections.unmodifiableList(new ArrayList<>(targets)),
+                Collections.unmodifiableMap(targetMap), Collections.unmodifiableList(new ArrayList<>(tests)),
+                profile != null ? profile : options.getProfile(), null, null);
+        project.validateTargets();
+        return project;
+    }
+
+    private static Profile findProfile(List<Profile> profiles, String profile) {
+        for (Profile candidate : profiles) {
+            if (candidate.getName().equals(profile)) return candidate;
+        }
+        throw new IllegalArgumentException("Unknown profile " + profile);
+    }
+
+    private void validateTargets() {
+        Map<Target, Boolean> visited = new HashMap<>();
+        for (Target target : targets) {
+            validateTarget(target, visited, new ArrayDeque<>());
+        }
+    }
+
+    private void validateTarget(Target target, Map<Target, Boolean> visited, Deque<String> path) {
+        Boolean done = visited.get(target);
+        if (done != null) {
+            if (done) return;
+            List<String> cycle = new ArrayList<>(path);
+            Collections.reverse(cycle);
+            cycle = cycle.subList(cycle.indexOf(target.getName()), cycle.size());
+            cycle.add(target.getName());
+            throw new IllegalArgumentException("Cyclic dependency between targets: " + String.join(" -> ", cycle));
+        }
+        visited.put(target, false);
+        path.push(target.getName());
+        for (Target dependency : getDependencies(target)) {
+            if (!(dependency.isStaticLibrary() || dependency.isSharedLibrary())) {
+                throw new IllegalArgumentException("Target " + target.getName() + " depends on " + dependency.getName() + " which is not a library");
+            }
+            validateTarget(dependency, visited, path);
+        }
+        path.pop();
+        visited.put(target, true);
+    }
+
     private static List<Script> parseScripts(Toml config) {
         List<Script> scripts = new ArrayList<>();
         if (config != null) {
@@ -71,6 +317,16 @@ public class Project {
         return scripts;
     }
 
+    private static List<Profile> parseProfiles(Toml config, Options options) {
+        List<Profile> profiles = new ArrayList<>();
+        if (config != null) {
+            for (Map.Entry<String, Object> entry : config.entrySet()) {
+                profiles.add(new Profile(entry.getKey(), new Options(config.getTable(entry.getKey()), options)));
+            }
+        }
+        return profiles;
+    }
+
     private static List<Target> parseTargets(Toml config) {
         List<Target> targets = new ArrayList<>();
         if (config != null) {
@@ -78,13 +334,17 @@ public class Project {
                 String name = entry.getKey();
                 Toml table = config.getTable(name);
                 List<String> sources = table.contains("sources") ? table.getList("sources") : Collections.singletonList(".");
+                List<String> excludes = table.contains("excludes") ? table.getList("excludes") : Collections.emptyList();
                 List<String> includes = table.contains("includes") ? table.getList("includes") : Collections.emptyList();
                 List<String> libraries = table.contains("libraries") ? table.getList("libraries") : Collections.emptyList();
                 boolean executable = table.getBoolean("executable", false);
                 boolean staticLibrary = table.getBoolean("staticLibrary", false);
                 boolean sharedLibrary = table.getBoolean("sharedLibrary", false);
                 if (!(executable || staticLibrary || sharedLibrary)) executable = true;
-                targets.add(new Target(name, sources, includes, libraries, executable, staticLibrary, sharedLibrary));
+                boolean unity = table.getBoolean("unity", false);
+                int unityBatchSize = table.getLong("unityBatchSize", 16L).intValue();
+                String pch = table.getString("pch");
+                targets.add(new Target(name, sources, excludes, includes, libraries, executable, staticLibrary, sharedLibrary, unity, unityBatchSize, pch));
             }
         }
         return targets;
@@ -100,9 +360,58 @@ public class Project {
                 String args = table.getString("args");
                 String input = table.getString("input");
                 String expect = table.getString("expect");
-                tests.add(new Test(name, target, args, input, expect));
+                long timeout = table.getLong("timeout", 0L);
+                tests.add(new Test(name, target, args, input, expect, timeout));
             }
         }
         return tests;
     }
+
+    public static class Builder {
+        private final Path root;
+        private Options options = new Options(Collections.<String, String>emptyMap());
+        private final List<Profile> profiles = new ArrayList<>();
+        private final List<Script> scripts = new ArrayList<>();
+        private final List<Target> targets = new ArrayList<>();
+        private final List<Test> tests = new ArrayList<>();
+        private String profile;
+
+        public Builder(Path root) {
+            this.root = root;
+        }
+
+        public Builder options(Options options) {
+            this.options = options;
+            return this;
+        }
+
+        public Builder profile(Profile profile) {
+            profiles.add(profile);
+            return this;
+        }
+
+        public Builder script(Script script) {
+            scripts.add(script);
+            return this;
+        }
+
+        public Builder target(Target target) {
+            targets.add(target);
+            return this;
+        }
+
+        public Builder test(Test test) {
+            tests.add(test);
+            return this;
+        }
+
+        public Builder selectProfile(String profile) {
+            this.profile = profile;
+            return this;
+        }
+
+        public Project build() {
+            return create(root, options, profiles, scripts, targets, tests, profile);
+        }
+    }
 }
@@ -0,0 +1,34 @@
+package com.github.mouse0w0.mike;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+
+public interface RemoteExecutor {
+    int BUSY = Integer.MIN_VALUE;
+
+    int execute(List<String> command, List<String> inputs, Path workDir, OutputStream log) throws IOException, InterruptedException;
+
+    static int compile(RemoteExecutor remote, List<String> command, List<String> inputs, Path workDir, OutputStream log) throws IOException, InterruptedException {
+        if (remote != null) {
+            try {
+                int exitCode = remote.execute(command, inputs, workDir, log);
+                if (exitCode != BUSY) return exitCode;
+            } catch (IOException e) {
+                // The worker went away or failed, compile locally instead.
+            }
+        }
+        Process process = Trace.start(new ProcessBuilder(command).directory(workDir.toFile()).redirectErrorStream(true));
+        process.getOutputStream().close();
+        try (InputStream in = process.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                if (log != null) log.write(buffer, 0, n);
+            }
+        }
+        return process.waitFor();
+    }
+}
@@ -1,8 +1,8 @@
 package com.github.mouse0w0.mike;
 
 public class Script {
-    private String name;
-    private String[] commands;
+    private final String name;
+    private final String[] commands;
 
     public Script(String name, String[] commands) {
         this.name = name;
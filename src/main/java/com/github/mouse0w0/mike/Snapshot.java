@@ -0,0 +1,189 @@
+package com.github.mouse0w0.mike;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class Snapshot {
+    public static final String SNAPSHOT_FILE = "mike.snapshot";
+
+    private static final int MAGIC = 0x4d494b53;
+    private static final int VERSION = 2;
+    private static final Pattern BUILD_DIR = Pattern.compile("^\\s*BUILD_DIR\\s*=\\s*(\"([^\"\\\\]*)\"|'([^']*)')\\s*(#.*)?$");
+
+    public static Project loadProject(Path root, String profile) {
+        byte[] config;
+        try {
+            config = Files.readAllBytes(root.resolve(Project.MIKEFILE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String text = new String(config, StandardCharsets.UTF_8);
+        String buildDir = getBuildDir(text);
+        Path file = root.resolve(buildDir).resolve(SNAPSHOT_FILE);
+        Project.Builder builder = read(file, root, config);
+        if (builder != null) return builder.selectProfile(profile).build();
+
+        Project project = Project.parseProject(root, text, profile);
+        if (!buildDir.equals(project.getOptions().getBuildDir())) return project;
+        try {
+            Files.createDirectories(file.getParent());
+            FileUtils.writeIfChanged(file, write(project, config));
+        } catch (IOException ignored) {
+        }
+        return project;
+    }
+
+    private static String getBuildDir(String config) {
+        for (String line : config.split("\r?\n")) {
+            if (line.trim().startsWith("[")) break;
+            Matcher matcher = BUILD_DIR.matcher(line);
+            if (matcher.matches()) return matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+        }
+        return new Options(Collections.emptyMap()).getBuildDir();
+    }
+
+    private static String getSchema() {
+        return VERSION + "/" + Mike.class.getPackage().getImplementationVersion() + "/"
+                + String.join(",", new Options(Collections.emptyMap()).toMap().keySet());
+    }
+
+    private static Project.Builder read(Path file, Path root, byte[] config) {
+        if (Files.notExists(file)) return null;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+            if (in.readInt() != MAGIC || !getSchema().equals(in.readUTF())) return null;
+            byte[] snapshotConfig = new byte[in.readInt()];
+            in.readFully(snapshotConfig);
+            if (!Arrays.equals(config, snapshotConfig)) return null;
+
+            Options options = new Options(readOptions(in));
+            Project.Builder builder = new Project.Builder(root).options(options);
+            for (int i = in.readInt(); i > 0; i--) {
+                builder.profile(new Profile(readString(in), new Options(readOptions(in), options)));
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                builder.script(new Script(readString(in), readList(in).toArray(new String[0])));
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                builder.target(new Target(readString(in), readList(in), readList(in), readList(in), readList(in),
+                        in.readBoolean(), in.readBoolean(), in.readBoolean(), in.readBoolean(), in.readInt(), readString(in)));
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                builder.test(new Test(readString(in), readString(in), readString(in), readString(in), readString(in), in.readLong()));
+            }
+            return builder;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static byte[] write(Project project, byte[] config) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(config.length * 2 + 256);
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeInt(MAGIC);
+            out.writeUTF(getSchema());
+            out.writeInt(config.length);
+            out.write(config);
+            writeOptions(out, project.getBaseOptions());
+            out.writeInt(project.getProfiles().size());
+            for (Profile profile : project.getProfiles()) {
+                writeString(out, profile.getName());
+                writeOptions(out, profile.getOptions());
+            }
+            out.writeInt(project.getScripts().size());
+            for (Script script : project.getScripts()) {
+                writeString(out, script.getName());
+                writeList(out, Arrays.asList(script.getCommands()));
+            }
+            out.writeInt(project.getTargets().size());
+            for (Target target : project.getTargets()) {
+                writeString(out, target.getName());
+                writeList(out, target.getSources());
+                writeList(out, target.getExcludes());
+                writeList(out, target.getIncludes());
+                writeList(out, target.getLibraries());
+                out.writeBoolean(target.isExecutable());
+                out.writeBoolean(target.isStaticLibrary());
+                out.writeBoolean(target.isSharedLibrary());
+                out.writeBoolean(target.isUnity());
+                out.writeInt(target.getUnityBatchSize());
+                writeString(out, target.getPch());
+            }
+            out.writeInt(project.getTests().size());
+            for (Test test : project.getTests()) {
+                writeString(out, test.getName());
+                writeString(out, test.getTarget());
+                writeString(out, test.getArgs());
+                writeString(out, test.getInput());
+                writeString(out, test.getExpect());
+                out.writeLong(test.getTimeout());
+            }
+        }
+        return buffer.toByteArray();
+    }
+
+    private static Map<String, String> readOptions(DataInputStream in) throws IOException {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            options.put(readString(in), readString(in));
+        }
+        return options;
+    }
+
+    private static void writeOptions(DataOutputStream out, Options options) throws IOException {
+        Map<String, String> map = options.toMap();
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private static List<String> readList(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<String> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(readString(in));
+        }
+        return list;
+    }
+
+    private static void writeList(DataOutputStream out, List<String> list) throws IOException {
+        out.writeInt(list.size());
+        for (String value : list) {
+            writeString(out, value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
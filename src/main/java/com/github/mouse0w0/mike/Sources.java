@@ -0,0 +1,290 @@
+package com.github.mouse0w0.mike;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Predicate;
+
+public class Sources {
+    public static final String MANIFEST_FILE = "mike.manifest";
+
+    private final Path root;
+    private final Path manifestFile;
+    private final String buildDir;
+    private final Map<String, Directory> directories = new ConcurrentHashMap<>();
+    private final Set<String> visited = ConcurrentHashMap.newKeySet();
+    private final Map<Target, SourceSet> resolved = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    public Sources(Path root, String buildDir) {
+        this.root = root;
+        this.buildDir = normalize(buildDir);
+        this.manifestFile = root.resolve(buildDir).resolve(MANIFEST_FILE);
+        load();
+    }
+
+    public List<String> getSourceFiles(Target target) {
+        return resolve(target).sources;
+    }
+
+    public List<String> getHeaderFiles(Target target) {
+        return resolve(target).headers;
+    }
+
+    public List<String> getDirectories(Target target) {
+        return resolve(target).directories;
+    }
+
+    public SourceSet resolve(Target target) {
+        return resolved.computeIfAbsent(target, this::doResolve);
+    }
+
+    private SourceSet doResolve(Target target) {
+        Set<String> files = new TreeSet<>();
+        Set<String> dirs = new TreeSet<>();
+        for (String source : target.getSources()) {
+            if (isGlob(source)) {
+                String base = getGlobBase(source);
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + source);
+                collect(base, path -> matcher.matches(Paths.get(path)), files, dirs);
+            } else if (isCurrentPath(source)) {
+                collect("", path -> true, files, dirs);
+            } else if (Files.isDirectory(root.resolve(source))) {
+                collect(normalize(source), path -> true, files, dirs);
+            } else {
+                files.add(normalize(source));
+            }
+        }
+
+        List<PathMatcher> excludes = new ArrayList<>();
+        for (String exclude : target.getExcludes()) {
+            excludes.add(FileSystems.getDefault().getPathMatcher("glob:" + exclude));
+        }
+        List<String> sources = new ArrayList<>();
+        List<String> headers = new ArrayList<>();
+        for (String file : files) {
+            if (isExcluded(file, excludes)) continue;
+            if (isSourceFile(file)) sources.add(file);
+            else if (isHeaderFile(file)) headers.add(file);
+        }
+        return new SourceSet(Collections.unmodifiableList(sources), Collections.unmodifiableList(headers),
+                Collections.unmodifiableList(new ArrayList<>(dirs)));
+    }
+
+    private void collect(String base, Predicate<String> filter, Set<String> files, Set<String> dirs) {
+        if (!Files.isDirectory(root.resolve(base))) return;
+        ConcurrentLinkedQueue<String> foundFiles = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<String> foundDirs = new ConcurrentLinkedQueue<>();
+        ForkJoinPool.commonPool().invoke(new Scan(base, foundFiles, foundDirs));
+        for (String file : foundFiles) {
+            if (filter.test(file)) files.add(file);
+        }
+        dirs.addAll(foundDirs);
+    }
+
+    private Directory scan(String dir) {
+        Path path = dir.isEmpty() ? root : root.resolve(dir);
+        try {
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            visited.add(dir);
+            Directory directory = directories.get(dir);
+            if (directory != null && directory.modified == modified) {
+                return directory;
+            }
+            List<String> files = new ArrayList<>();
+            List<String> subdirs = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                for (Path child : stream) {
+                    String name = child.getFileName().toString();
+                    BasicFileAttributes attributes = Files.readAttributes(child, BasicFileAttributes.class);
+                    if (attributes.isDirectory()) {
+                        if (!isIgnoredDirectory(join(dir, name), name)) subdirs.add(name);
+                    } else if (attributes.isRegularFile() && (isSourceFile(name) || isHeaderFile(name))) {
+                        files.add(name);
+                    }
+                }
+            }
+            Collections.sort(files);
+            Collections.sort(subdirs);
+            directory = new Directory(modified, files, subdirs);
+            directories.put(dir, directory);
+            dirty = true;
+            return directory;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean isIgnoredDirectory(String dir, String name) {
+        return name.startsWith(".") || dir.equals(buildDir);
+    }
+
+    public void save() {
+        if (!dirty && visited.containsAll(directories.keySet())) return;
+        try {
+            Files.createDirectories(manifestFile.getParent());
+            Path temp = FileUtils.getUniqueTempFile(manifestFile);
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Directory> entry : directories.entrySet()) {
+                    if (!visited.contains(entry.getKey())) continue;
+                    Directory directory = entry.getValue();
+                    writer.write(entry.getKey());
+                    writer.write('\t');
+                    writer.write(Long.toString(directory.modified));
+                    writer.write('\t');
+                    writer.write(String.join("/", directory.subdirs));
+                    writer.write('\t');
+                    writer.write(String.join("/", directory.files));
+                    writer.write('\n');
+                }
+            }
+            Files.move(temp, manifestFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            dirty = false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void load() {
+        if (Files.notExists(manifestFile)) return;
+        try {
+            for (String line : Files.readAllLines(manifestFile, StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 4) continue;
+                directories.put(fields[0], new Directory(Long.parseLong(fields[1]), split(fields[3]), split(fields[2])));
+            }
+        } catch (IOException | RuntimeException e) {
+            directories.clear();
+        }
+    }
+
+    private static List<String> split(String s) {
+        return s.isEmpty() ? Collections.emptyList() : Arrays.asList(s.split("/"));
+    }
+
+    private static boolean isExcluded(String file, List<PathMatcher> excludes) {
+        Path path = Paths.get(file);
+        for (PathMatcher exclude : excludes) {
+            if (exclude.matches(path)) return true;
+        }
+        return false;
+    }
+
+    private static String join(String dir, String name) {
+        return dir.isEmpty() ? name : dir + "/" + name;
+    }
+
+    private static String normalize(String path) {
+        String normalized = Paths.get(path).normalize().toString().replace('\\', '/');
+        return normalized.equals(".") ? "" : normalized;
+    }
+
+    private static boolean isGlob(String path) {
+        return path.indexOf('*') >= 0 || path.indexOf('?') >= 0 || path.indexOf('[') >= 0 || path.indexOf('{') >= 0;
+    }
+
+    private static String getGlobBase(String glob) {
+        String base = "";
+        for (String part : glob.split("/")) {
+            if (isGlob(part)) break;
+            base = join(base, part);
+        }
+        return normalize(base.isEmpty() ? "." : base);
+    }
+
+    public static boolean isCurrentPath(String path) {
+        return path.isEmpty() || path.equals(".") || path.equals("./");
+    }
+
+    public static boolean isSourceFile(String file) {
+        return file.endsWith(".c") || file.endsWith(".cc") || file.endsWith(".cpp");
+    }
+
+    public static boolean isHeaderFile(String file) {
+        return file.endsWith(".h") || file.endsWith(".hpp");
+    }
+
+    public static class SourceSet {
+        private final List<String> sources;
+        private final List<String> headers;
+        private final List<String> directories;
+
+        private SourceSet(List<String> sources, List<String> headers, List<String> directories) {
+            this.sources = sources;
+            this.headers = headers;
+            this.directories = directories;
+        }
+
+        public List<String> getSources() {
+            return sources;
+        }
+
+        public List<String> getHeaders() {
+            return headers;
+        }
+
+        public List<String> getDirectories() {
+            return directories;
+        }
+    }
+
+    private static class Directory {
+        private final long modified;
+        private final List<String> files;
+        private final List<String> subdirs;
+
+        private Directory(long modified, List<String> files, List<String> subdirs) {
+            this.modified = modified;
+            this.files = files;
+            this.subdirs = subdirs;
+        }
+    }
+
+    private class Scan extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String dir;
+        private final ConcurrentLinkedQueue<String> files;
+        private final ConcurrentLinkedQueue<String> dirs;
+
+        private Scan(String dir, ConcurrentLinkedQueue<String> files, ConcurrentLinkedQueue<String> dirs) {
+            this.dir = dir;
+            this.files = files;
+            this.dirs = dirs;
+        }
+
+        @Override
+        protected void compute() {
+            Directory directory = scan(dir);
+            dirs.add(dir.isEmpty() ? "." : dir);
+            for (String file : directory.files) {
+                files.add(Sources.join(dir, file));
+            }
+            List<Scan> tasks = new ArrayList<>();
+            for (String subdir : directory.subdirs) {
+                tasks.add(new Scan(Sources.join(dir, subdir), files, dirs));
+            }
+            invokeAll(tasks);
+        }
+    }
+}
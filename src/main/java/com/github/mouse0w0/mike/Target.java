@@ -3,22 +3,30 @@ package com.github.mouse0w0.mike;
 import java.util.List;
 
 public class Target {
-    private String name;
-    private List<String> sources;
-    private List<String> includes;
-    private List<String> libraries;
-    private boolean executable;
-    private boolean staticLibrary;
-    private boolean sharedLibrary;
-
-    public Target(String name, List<String> sources, List<String> includes, List<String> libraries, boolean executable, boolean staticLibrary, boolean sharedLibrary) {
+    private final String name;
+    private final List<String> sources;
+    private final List<String> excludes;
+    private final List<String> includes;
+    private final List<String> libraries;
+    private final boolean executable;
+    private final boolean staticLibrary;
+    private final boolean sharedLibrary;
+    private final boolean unity;
+    private final int unityBatchSize;
+    private final String pch;
+
+    public Target(String name, List<String> sources, List<String> excludes, List<String> includes, List<String> libraries, boolean executable, boolean staticLibrary, boolean sharedLibrary, boolean unity, int unityBatchSize, String pch) {
         this.name = name;
         this.sources = sources;
+        this.excludes = excludes;
         this.includes = includes;
         this.libraries = libraries;
         this.executable = executable;
         this.staticLibrary = staticLibrary;
         this.sharedLibrary = sharedLibrary;
+        this.unity = unity;
+        this.unityBatchSize = unityBatchSize;
+        this.pch = pch;
     }
 
     public String getName() {
@@ -29,6 +37,10 @@ public class Target {
         return sources;
     }
 
+    public List<String> getExcludes() {
+        return excludes;
+    }
+
     public List<String> getIncludes() {
         return includes;
     }
@@ -48,4 +60,16 @@ public class Target {
     public boolean isSharedLibrary() {
         return sharedLibrary;
     }
+
+    public boolean isUnity() {
+        return unity;
+    }
+
+    public int getUnityBatchSize() {
+        return unityBatchSize;
+    }
+
+    public String getPch() {
+        return pch;
+    }
 }
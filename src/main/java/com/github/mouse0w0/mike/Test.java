@@ -1,18 +1,20 @@
 package com.github.mouse0w0.mike;
 
 public class Test {
-    private String name;
-    private String target;
-    private String args;
-    private String input;
-    private String expect;
+    private final String name;
+    private final String target;
+    private final String args;
+    private final String input;
+    private final String expect;
+    private final long timeout;
 
-    public Test(String name, String target, String args, String input, String expect) {
+    public Test(String name, String target, String args, String input, String expect, long timeout) {
         this.name = name;
         this.target = target;
         this.args = args;
         this.input = input;
         this.expect = expect;
+        this.timeout = timeout;
     }
 
     public String getName() {
@@ -34,4 +36,8 @@ public class Test {
     public String getExpect() {
         return expect;
     }
+
+    public long getTimeout() {
+        return timeout;
+    }
 }
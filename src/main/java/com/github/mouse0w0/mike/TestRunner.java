@@ -0,0 +1,316 @@
+package com.github.mouse0w0.mike;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class TestRunner {
+    public static final String CACHE_FILE = "mike.tests";
+    public static final String REPORT_FILE = "test-results.xml";
+
+    private static final long KILL_GRACE = 1;
+
+    private final Project project;
+    private final Path buildDir;
+    private final int parallelism;
+    private final long timeout;
+    private final Trace trace;
+
+    public TestRunner(Project project, Path buildDir, int parallelism, long timeout) {
+        this(project, buildDir, parallelism, timeout, null);
+    }
+
+    public TestRunner(Project project, Path buildDir, int parallelism, long timeout, Trace trace) {
+        this.project = project;
+        this.buildDir = project.getRoot().resolve(buildDir);
+        this.parallelism = Math.max(1, parallelism);
+        this.timeout = timeout;
+        this.trace = trace;
+    }
+
+    public boolean run(List<Test> tests, Path report) throws IOException, InterruptedException {
+        Properties cache = new Properties();
+        Path cacheFile = buildDir.resolve(CACHE_FILE);
+        if (Files.exists(cacheFile)) {
+            try (InputStream in = Files.newInputStream(cacheFile)) {
+                cache.load(in);
+            }
+        }
+        Files.createDirectories(buildDir.resolve("tests"));
+
+        System.out.println("Test project " + project.getRoot());
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, tests.size())));
+        List<Result> results = new ArrayList<>();
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Test test : tests) {
+                futures.add(executor.submit(() -> run(test, cache.getProperty(test.getName()))));
+            }
+            int current = 1;
+            for (Future<Result> future : futures) {
+                Result result;
+                try {
+                    result = future.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+                results.add(result);
+                System.out.println(current + "/" + tests.size() + "\tTest  " + current + "\t: " + result.test.getName()
+                        + "\t................   " + result.status + String.format(Locale.ROOT, " %.2fs", result.time));
+                if (result.status == Status.FAILED) {
+                    System.out.println("\t\tExpected: " + result.test.getExpect());
+                    System.out.println("\t\tActual  : " + result.output);
+                } else if (result.status != Status.PASSED && result.status != Status.CACHED) {
+                    System.out.println("\t\t" + result.output);
+                }
+                current++;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        double time = (System.nanoTime() - start) / 1e9;
+
+        int failures = 0;
+        for (Result result : results) {
+            if (result.status == Status.PASSED || result.status == Status.CACHED) {
+                cache.setProperty(result.test.getName(), result.hash);
+            } else {
+                cache.remove(result.test.getName());
+                failures++;
+            }
+        }
+        Path temp = FileUtils.getUniqueTempFile(cacheFile);
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            cache.store(out, null);
+        }
+        Files.move(temp, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        writeReport(report, results, time);
+        System.out.println("Test project finished, " + (results.size() - failures) + " passed, " + failures + " failed");
+        return failures == 0;
+    }
+
+    private String getExecutable(Test test) {
+        Target target = project.getTarget(test.getTarget());
+        return target != null ? project.getExecutable(target) : test.getTarget();
+    }
+
+    private Result run(Test test, String cachedHash) throws InterruptedException {
+        try {
+            return execute(test, cachedHash);
+        } catch (IOException e) {
+            return new Result(test, Status.ERROR, "Cannot run test: " + e.getMessage(), "", null, 0);
+        }
+    }
+
+    private Result execute(Test test, String cachedHash) throws IOException, InterruptedException {
+        Path root = project.getRoot();
+        String executable = getExecutable(test);
+        Path binary = root.resolve(executable);
+        if (!Files.isRegularFile(binary)) {
+            return new Result(test, Status.ERROR, "No found " + binary, "", null, 0);
+        }
+        List<Path> libraries = new ArrayList<>();
+        Target target = project.getTarget(test.getTarget());
+        if (target != null) {
+            for (Target dependency : project.getTransitiveDependencies(target)) {
+                if (dependency.isSharedLibrary()) libraries.add(root.resolve(project.getSharedLibrary(dependency)));
+            }
+        }
+        String hash = hash(test, binary, libraries);
+        if (hash.equals(cachedHash)) {
+            return new Result(test, Status.CACHED, "", "", hash, 0);
+        }
+
+        String command = "./" + executable;
+        if (isNotEmpty(test.getArgs())) command += " " + test.getArgs();
+        Path stdout = buildDir.resolve("tests").resolve(test.getName() + ".out");
+        Path stderr = buildDir.resolve("tests").resolve(test.getName() + ".err");
+        long start = System.nanoTime();
+        long seconds = test.getTimeout() > 0 ? test.getTimeout() : timeout;
+        boolean exited = false;
+        int exitCode = -1;
+        Trace.Span span = trace == null ? null : trace.begin(Action.TEST, test.getName());
+        try {
+            Process process = Trace.start(new ProcessBuilder("/bin/bash", "-c", getScript(command))
+                    .directory(root.toFile())
+                    .redirectOutput(stdout.toFile())
+                    .redirectError(stderr.toFile()));
+            try (OutputStream in = process.getOutputStream()) {
+                if (isNotEmpty(test.getInput())) {
+                    in.write((test.getInput() + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+            } catch (IOException ignored) {
+            }
+            exited = process.waitFor(seconds, TimeUnit.SECONDS);
+            if (exited) {
+                exitCode = process.exitValue();
+            } else {
+                process.destroy();
+                if (!process.waitFor(KILL_GRACE, TimeUnit.SECONDS)) process.destroyForcibly().waitFor();
+            }
+        } finally {
+            if (span != null) span.end(exitCode);
+        }
+        double time = (System.nanoTime() - start) / 1e9;
+        String output = normalize(new String(Files.readAllBytes(stdout), StandardCharsets.UTF_8));
+        String errors = new String(Files.readAllBytes(stderr), StandardCharsets.UTF_8);
+        if (!exited) {
+            return new Result(test, Status.TIMEOUT, "Timed out after " + seconds + "s", errors, hash, time);
+        }
+        Status status = output.equals(normalize(test.getExpect())) ? Status.PASSED : Status.FAILED;
+        return new Result(test, status, output, errors, hash, time);
+    }
+
+    static String getScript(String command) {
+        return "set -m; (" + command + "\n) & pid=$!; set +m; "
+                + "trap 'kill -KILL -- -$pid 2>/dev/null; exit 137' TERM; wait $pid";
+    }
+
+    private void writeReport(Path report, List<Result> results, double time) throws IOException {
+        int failures = 0;
+        int errors = 0;
+        int skipped = 0;
+        for (Result result : results) {
+            if (result.status == Status.FAILED) failures++;
+            else if (result.status == Status.TIMEOUT || result.status == Status.ERROR) errors++;
+            else if (result.status == Status.CACHED) skipped++;
+        }
+        Files.createDirectories(report.toAbsolutePath().getParent());
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(report, StandardCharsets.UTF_8))) {
+            writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            writer.println("<testsuite name=\"" + escape(project.getRoot().getFileName().toString()) + "\" tests=\"" + results.size()
+                    + "\" failures=\"" + failures + "\" errors=\"" + errors + "\" skipped=\"" + skipped + "\" time=\"" + format(time) + "\">");
+            for (Result result : results) {
+                Test test = result.test;
+                writer.print("  <testcase name=\"" + escape(test.getName()) + "\" classname=\"" + escape(test.getTarget())
+                        + "\" time=\"" + format(result.time) + "\"");
+                if (result.status == Status.PASSED) {
+                    writer.println("/>");
+                    continue;
+                }
+                writer.println(">");
+                if (result.status == Status.FAILED) {
+                    writer.println("    <failure message=\"Expected '" + escape(normalize(test.getExpect())) + "' but was '"
+                            + escape(result.output) + "'\"/>");
+                } else if (result.status == Status.CACHED) {
+                    writer.println("    <skipped message=\"Cached, binary and inputs unchanged since last pass\"/>");
+                } else {
+                    writer.println("    <error message=\"" + escape(result.output) + "\"/>");
+                }
+                if (!result.errors.isEmpty()) {
+                    writer.println("    <system-err>" + escape(result.errors) + "</system-err>");
+                }
+                writer.println("  </testcase>");
+            }
+            writer.println("</testsuite>");
+        }
+    }
+
+    private static String hash(Test test, Path binary, List<Path> libraries) throws IOException {
+        MessageDigest digest = FileUtils.newDigest();
+        update(digest, binary);
+        for (Path library : libraries) {
+            digest.update((byte) 0);
+            digest.update(library.toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            if (Files.isRegularFile(library)) update(digest, library);
+        }
+        for (String s : new String[]{test.getArgs(), test.getInput(), test.getExpect()}) {
+            digest.update((byte) 0);
+            digest.update(String.valueOf(s).getBytes(StandardCharsets.UTF_8));
+        }
+        return FileUtils.toHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+    }
+
+    private static String normalize(String output) {
+        if (output == null) return "";
+        int end = output.length();
+        while (end > 0 && (output.charAt(end - 1) == '\n' || output.charAt(end - 1) == '\r')) end--;
+        return output.substring(0, end).replace("\r\n", " ").replace('\n', ' ');
+    }
+
+    private static String format(double seconds) {
+        return String.format(Locale.ROOT, "%.3f", seconds);
+    }
+
+    private static String escape(String s) {
+        StringBuilder builder = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '<': builder.append("&lt;"); break;
+                case '>': builder.append("&gt;"); break;
+                case '&': builder.append("&amp;"); break;
+                case '"': builder.append("&quot;"); break;
+                case '\'': builder.append("&apos;"); break;
+                default:
+                    if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static boolean isNotEmpty(String s) {
+        return s != null && !s.isEmpty();
+    }
+
+    private enum Status {
+        PASSED("Passed"), FAILED("Failed"), TIMEOUT("Timeout"), ERROR("Error"), CACHED("Cached");
+
+        private final String text;
+
+        Status(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    private static class Result {
+        private final Test test;
+        private final Status status;
+        private final String output;
+        private final String errors;
+        private final String hash;
+        private final double time;
+
+        private Result(Test test, Status status, String output, String errors, String hash, double time) {
+            this.test = test;
+            this.status = status;
+            this.output = output;
+            this.errors = errors;
+            this.hash = hash;
+            this.time = time;
+        }
+    }
+}
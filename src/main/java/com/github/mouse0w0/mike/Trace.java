@@ -0,0 +1,357 @@
+package com.github.mouse0w0.mike;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+public class Trace {
+    public static final String CACHE = "cache";
+    public static final String WORKER = "worker";
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+    private static final long SAMPLE_INTERVAL = 20;
+    private static final int SLOWEST = 10;
+
+    private final Path file;
+    private boolean disabled;
+
+    public Trace(Path file) {
+        this.file = file.toAbsolutePath();
+    }
+
+    public static Trace of(String file) {
+        return file == null || file.isEmpty() ? null : new Trace(Paths.get(file));
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public Span begin(String category, String name) {
+        Span span = new Span(category, name);
+        CURRENT.set(span);
+        return span;
+    }
+
+    public static void annotate(String key, String value) {
+        Span span = CURRENT.get();
+        if (span != null) span.args.put(key, value);
+    }
+
+    public static Process start(ProcessBuilder builder) throws IOException {
+        Span span = CURRENT.get();
+        if (span == null || !Files.isDirectory(Paths.get("/proc/self"))) return builder.start();
+        Path pidFile = Files.createTempFile("mike-trace", ".pid");
+        List<String> command = new ArrayList<>(Arrays.asList("/bin/sh", "-c", "echo $$ > \"$0\" && exec \"$@\"", pidFile.toString()));
+        command.addAll(builder.command());
+        Process process;
+        try {
+            process = new ProcessBuilder(command)
+                    .directory(builder.directory())
+                    .redirectInput(builder.redirectInput())
+                    .redirectOutput(builder.redirectOutput())
+                    .redirectError(builder.redirectError())
+                    .redirectErrorStream(builder.redirectErrorStream())
+                    .start();
+        } catch (IOException e) {
+            Files.deleteIfExists(pidFile);
+            throw e;
+        }
+        Thread sampler = new Thread(() -> sample(process, pidFile, span.peak), "Trace sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+        span.samplers.add(sampler);
+        return process;
+    }
+
+    private static void sample(Process process, Path pidFile, AtomicLong peak) {
+        try {
+            String pid = "";
+            while (pid.isEmpty() && process.isAlive()) {
+                pid = new String(Files.readAllBytes(pidFile), StandardCharsets.US_ASCII).trim();
+                if (pid.isEmpty()) Thread.sleep(1);
+            }
+            while (!pid.isEmpty()) {
+                peak.accumulateAndGet(getPeakRss(pid), Math::max);
+                if (process.waitFor(SAMPLE_INTERVAL, TimeUnit.MILLISECONDS)) break;
+            }
+        } catch (IOException ignored) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                Files.deleteIfExists(pidFile);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static long getPeakRss(String pid) {
+        long peak = 0;
+        Path proc = Paths.get("/proc", pid);
+        try {
+            for (String line : Files.readAllLines(proc.resolve("status"), StandardCharsets.US_ASCII)) {
+                if (line.startsWith("VmHWM:")) {
+                    peak = Long.parseLong(line.substring(6).replace("kB", "").trim());
+                    break;
+                }
+            }
+            try (Stream<Path> tasks = Files.list(proc.resolve("task"))) {
+                for (Path task : (Iterable<Path>) tasks::iterator) {
+                    String children = new String(Files.readAllBytes(task.resolve("children")), StandardCharsets.US_ASCII).trim();
+                    if (children.isEmpty()) continue;
+                    for (String child : children.split("\\s+")) {
+                        peak = Math.max(peak, getPeakRss(child));
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException ignored) {
+            // The process exited while it was being sampled.
+        }
+        return peak;
+    }
+
+    private synchronized void write(String line) {
+        if (disabled) return;
+        try {
+            Files.createDirectories(file.getParent());
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                FileLock lock = channel.lock();
+                try {
+                    channel.write(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)));
+                } finally {
+                    lock.release();
+                }
+            }
+        } catch (IOException e) {
+            disabled = true;
+            System.err.println("Cannot write trace " + file + ", tracing disabled: " + e);
+        }
+    }
+
+    public class Span {
+        private final String category;
+        private final String name;
+        private final long start = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        private final long startNanos = System.nanoTime();
+        private final Map<String, String> args = new LinkedHashMap<>();
+        private final List<Thread> samplers = new ArrayList<>();
+        private final AtomicLong peak = new AtomicLong();
+        private List<String> dependencies;
+
+        private Span(String category, String name) {
+            this.category = category;
+            this.name = name;
+        }
+
+        public void setDependencies(List<String> dependencies) {
+            this.dependencies = dependencies;
+        }
+
+        public void end(int exitCode) {
+            long duration = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+            if (CURRENT.get() == this) CURRENT.remove();
+            for (Thread sampler : samplers) {
+                try {
+                    sampler.join(SAMPLE_INTERVAL * 5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            StringBuilder line = new StringBuilder();
+            line.append(start).append('\t').append(duration).append('\t').append(category).append('\t').append(name)
+                    .append('\t').append(peak.get()).append('\t').append(exitCode).append('\t');
+            if (dependencies == null) line.append('-');
+            else line.append(String.join(" ", dependencies));
+            for (Map.Entry<String, String> arg : args.entrySet()) {
+                line.append('\t').append(arg.getKey()).append('=').append(arg.getValue());
+            }
+            write(line.append('\n').toString().replace('\r', ' '));
+        }
+    }
+
+    public static void report(Path log, Path output, PrintStream out) throws IOException {
+        List<Event> events = new ArrayList<>();
+        for (String line : Files.readAllLines(log, StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length < 7) continue;
+            try {
+                events.add(new Event(fields));
+            } catch (NumberFormatException ignored) {
+                // Skip lines torn by a crashed writer.
+            }
+        }
+        if (events.isEmpty()) {
+            out.println("No traced actions in " + log);
+            return;
+        }
+        events.sort(Comparator.comparingLong((Event event) -> event.start).thenComparing(event -> event.name));
+        long origin = events.get(0).start;
+        long end = 0;
+        long total = 0;
+        List<Long> lanes = new ArrayList<>();
+        for (Event event : events) {
+            end = Math.max(end, event.getEnd());
+            total += event.duration;
+            int lane = 0;
+            while (lane < lanes.size() && lanes.get(lane) > event.start) lane++;
+            if (lane == lanes.size()) lanes.add(0L);
+            lanes.set(lane, event.getEnd());
+            event.lane = lane + 1;
+        }
+        long wall = Math.max(1, end - origin);
+
+        if (output.toAbsolutePath().getParent() != null) Files.createDirectories(output.toAbsolutePath().getParent());
+        try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            JsonWriter json = new JsonWriter(writer);
+            json.beginObject();
+            json.name("displayTimeUnit").value("ms");
+            json.name("traceEvents").beginArray();
+            for (Event event : events) {
+                json.beginObject();
+                json.name("name").value(event.name);
+                json.name("cat").value(event.category);
+                json.name("ph").value("X");
+                json.name("ts").value(event.start - origin);
+                json.name("dur").value(event.duration);
+                json.name("pid").value(1);
+                json.name("tid").value(event.lane);
+                json.name("args").beginObject();
+                json.name("exit").value(event.exitCode);
+                if (event.peakRss > 0) json.name("peak_rss_kb").value(event.peakRss);
+                for (Map.Entry<String, String> arg : event.args.entrySet()) {
+                    json.name(arg.getKey()).value(arg.getValue());
+                }
+                json.endObject();
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        }
+
+        out.println("Trace written to " + output);
+        out.println(String.format(Locale.ROOT, "%d actions in %.2fs wall, %.2fs total, parallelism %.2f (peak %d)",
+                events.size(), wall / 1e6, total / 1e6, (double) total / wall, lanes.size()));
+
+        Map<String, long[]> categories = new LinkedHashMap<>();
+        Map<String, Integer> cache = new LinkedHashMap<>();
+        for (Event event : events) {
+            long[] sum = categories.computeIfAbsent(event.category, key -> new long[2]);
+            sum[0]++;
+            sum[1] += event.duration;
+            String status = event.args.get(CACHE);
+            if (status != null) cache.merge(status, 1, Integer::sum);
+        }
+        out.println("By category:");
+        for (Map.Entry<String, long[]> entry : categories.entrySet()) {
+            out.println(String.format(Locale.ROOT, "  %-10s %5d actions %9.2fs", entry.getKey(), entry.getValue()[0], entry.getValue()[1] / 1e6));
+        }
+        if (!cache.isEmpty()) {
+            StringBuilder builder = new StringBuilder("Cache:");
+            for (Map.Entry<String, Integer> entry : cache.entrySet()) {
+                builder.append(' ').append(entry.getKey()).append('=').append(entry.getValue());
+            }
+            out.println(builder);
+        }
+
+        List<Event> slowest = new ArrayList<>(events);
+        slowest.sort(Comparator.comparingLong((Event event) -> event.duration).reversed());
+        out.println("Slowest actions:");
+        for (Event event : slowest.subList(0, Math.min(SLOWEST, slowest.size()))) {
+            out.println(format(event));
+        }
+
+        out.println("Critical path:");
+        for (Event event : getCriticalPath(events)) {
+            out.println(format(event));
+        }
+    }
+
+    private static List<Event> getCriticalPath(List<Event> events) {
+        Map<String, Event> byName = new HashMap<>();
+        Event last = null;
+        for (Event event : events) {
+            byName.put(event.name, event);
+            if (last == null || event.getEnd() > last.getEnd()) last = event;
+        }
+        List<Event> path = new ArrayList<>();
+        for (Event current = last; current != null; ) {
+            path.add(current);
+            Event previous = null;
+            if (current.dependencies != null) {
+                for (String dependency : current.dependencies) {
+                    Event candidate = byName.get(dependency);
+                    if (candidate != null && (previous == null || candidate.getEnd() > previous.getEnd())) previous = candidate;
+                }
+            } else {
+                // Without recorded dependencies, assume the action waited for whatever finished last before it started.
+                for (Event candidate : events) {
+                    if (candidate.getEnd() <= current.start && (previous == null || candidate.getEnd() > previous.getEnd())) previous = candidate;
+                }
+            }
+            current = previous;
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    private static String format(Event event) {
+        String line = String.format(Locale.ROOT, "  %9.3fs  %-10s %s", event.duration / 1e6, event.category, event.name);
+        if (event.peakRss > 0) line += String.format(Locale.ROOT, "  (%.1f MiB)", event.peakRss / 1024.0);
+        String cache = event.args.get(CACHE);
+        if (cache != null) line += "  [" + cache + "]";
+        return line;
+    }
+
+    private static class Event {
+        private final long start;
+        private final long duration;
+        private final String category;
+        private final String name;
+        private final long peakRss;
+        private final int exitCode;
+        private final List<String> dependencies;
+        private final Map<String, String> args = new LinkedHashMap<>();
+        private int lane;
+
+        private Event(String[] fields) {
+            this.start = Long.parseLong(fields[0]);
+            this.duration = Long.parseLong(fields[1]);
+            this.category = fields[2];
+            this.name = fields[3];
+            this.peakRss = Long.parseLong(fields[4]);
+            this.exitCode = Integer.parseInt(fields[5]);
+            if (fields[6].equals("-")) this.dependencies = null;
+            else if (fields[6].isEmpty()) this.dependencies = Collections.emptyList();
+            else this.dependencies = Arrays.asList(fields[6].split(" "));
+            for (int i = 7; i < fields.length; i++) {
+                int index = fields[i].indexOf('=');
+                if (index > 0) args.put(fields[i].substring(0, index), fields[i].substring(index + 1));
+            }
+        }
+
+        private long getEnd() {
+            return start + duration;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.mouse0w0.mike;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class UnityBuild {
+    public static final String UNITY_DIR = "_unity";
+
+    private final Project project;
+    private final Map<Target, List<String>> units = new HashMap<>();
+    private final Map<Path, String> contents = new LinkedHashMap<>();
+
+    private UnityBuild(Project project) {
+        this.project = project;
+    }
+
+    public static UnityBuild create(Project project) {
+        UnityBuild unityBuild = new UnityBuild(project);
+        for (Target target : project.getTargets()) {
+            if (target.isUnity()) unityBuild.units.put(target, Collections.unmodifiableList(unityBuild.split(target)));
+        }
+        return unityBuild;
+    }
+
+    public static List<String> getCompileUnits(Project project, Target target) {
+        return project.getUnityBuild().getCompileUnits(target);
+    }
+
+    public List<String> getCompileUnits(Target target) {
+        List<String> compileUnits = units.get(target);
+        return compileUnits != null ? compileUnits : project.getSources().getSourceFiles(target);
+    }
+
+    private List<String> split(Target target) {
+        List<String> compileUnits = new ArrayList<>();
+        List<String> batch = new ArrayList<>();
+        int index = 0;
+        String dir = project.getOptions().getBuildDir() + "/" + UNITY_DIR + "/" + target.getName();
+        int batchSize = Math.max(1, target.getUnityBatchSize());
+        for (String source : project.getSources().getSourceFiles(target)) {
+            if (source.endsWith(".c")) {
+                compileUnits.add(source);
+                continue;
+            }
+            batch.add(source);
+            if (batch.size() == batchSize) {
+                compileUnits.add(addUnit(dir, index++, batch));
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            compileUnits.add(addUnit(dir, index, batch));
+        }
+        return compileUnits;
+    }
+
+    private String addUnit(String dir, int index, List<String> sources) {
+        String unit = dir + "/unity_" + index + ".cpp";
+        Path root = project.getRoot().toAbsolutePath().normalize();
+        Path file = root.resolve(unit).normalize();
+        StringBuilder builder = new StringBuilder("// Generated by Mike, do not edit\n");
+        for (String source : sources) {
+            String include = file.getParent().relativize(root.resolve(source).normalize()).toString().replace('\\', '/');
+            builder.append("#include \"").append(include).append("\"\n");
+        }
+        contents.put(file, builder.toString());
+        return unit;
+    }
+
+    public String getContent(Path file) {
+        return contents.get(file.toAbsolutePath().normalize());
+    }
+
+    public void write() {
+        Path unityDir = project.getRoot().toAbsolutePath().normalize()
+                .resolve(project.getOptions().getBuildDir()).resolve(UNITY_DIR).normalize();
+        try {
+            for (Map.Entry<Path, String> entry : contents.entrySet()) {
+                Files.createDirectories(entry.getKey().getParent());
+                FileUtils.writeIfChanged(entry.getKey(), entry.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+            if (Files.notExists(unityDir)) return;
+            List<Path> files;
+            try (Stream<Path> stream = Files.walk(unityDir)) {
+                files = stream.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                if (Files.isDirectory(file)) {
+                    try (Stream<Path> children = Files.list(file)) {
+                        if (children.findAny().isPresent()) continue;
+                    }
+                    Files.delete(file);
+                } else if (!contents.containsKey(file)) {
+                    Files.delete(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.mouse0w0.mike;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class Watcher {
+    private static final long DEBOUNCE_MILLIS = 100;
+
+    private final Path root;
+    private final String profile;
+    private final Map<Path, WatchKey> keys = new HashMap<>();
+    private WatchService service;
+
+    public Watcher(Path root, String profile) {
+        this.root = root.normalize();
+        this.profile = profile;
+    }
+
+    public void run() throws IOException {
+        try (WatchService service = root.getFileSystem().newWatchService()) {
+            this.service = service;
+            regenerate();
+            System.out.println("Watching " + root + " for changes, press Ctrl+C to stop");
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = poll(key);
+                while ((key = service.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= poll(key);
+                }
+                if (changed) {
+                    regenerate();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            keys.clear();
+            service = null;
+        }
+    }
+
+    private boolean poll(WatchKey key) {
+        Path dir = (Path) key.watchable();
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed = true;
+                continue;
+            }
+            String name = event.context().toString();
+            if (dir.equals(root)) {
+                if (name.equals(MakefileBackend.MAKEFILE) || name.equals(NinjaBackend.NINJA_FILE)
+                        || name.equals(Generator.COMPILE_COMMANDS)) continue;
+                if (name.startsWith(".") && name.endsWith(".tmp")) continue;
+                if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY && !name.equals(Project.MIKEFILE)) continue;
+            }
+            changed = true;
+        }
+        if (!key.reset()) {
+            keys.values().remove(key);
+        }
+        return changed;
+    }
+
+    private void regenerate() throws IOException {
+        Project project;
+        try {
+            project = Mike.generate(root, profile);
+        } catch (RuntimeException e) {
+            System.out.println("Failed to generate Makefile: " + e.getMessage());
+            return;
+        }
+        register(project);
+    }
+
+    private void register(Project project) throws IOException {
+        Set<Path> dirs = new HashSet<>();
+        dirs.add(root);
+        if (project != null) {
+            for (Target target : project.getTargets()) {
+                for (String dir : project.getSources().getDirectories(target)) {
+                    dirs.add(root.resolve(dir).normalize());
+                }
+                for (String include : target.getIncludes()) {
+                    dirs.add(root.resolve(include).normalize());
+                }
+            }
+        }
+
+        Iterator<Map.Entry<Path, WatchKey>> iterator = keys.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, WatchKey> entry = iterator.next();
+            if (!dirs.contains(entry.getKey())) {
+                entry.getValue().cancel();
+                iterator.remove();
+            }
+        }
+
+        for (Path dir : dirs) {
+            if (keys.containsKey(dir) || !Files.isDirectory(dir)) continue;
+            if (dir.equals(root)) {
+                keys.put(dir, dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY));
+            } else {
+                keys.put(dir, dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE));
+            }
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package com.github.mouse0w0.mike;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+public class Worker {
+    public static final String PROTOCOL = "MIKE-WORKER/2";
+    public static final String COMPILE = "COMPILE";
+    public static final String BUSY = "BUSY";
+    public static final String NEED = "NEED";
+    public static final String RUNNING = "RUNNING";
+    public static final String DONE = "DONE";
+    public static final String ERROR = "ERROR";
+    public static final String TOKEN_ENV = "MIKE_WORKER_TOKEN";
+    public static final int DEFAULT_PORT = 7878;
+    public static final int HEARTBEAT = 10;
+    public static final int READ_TIMEOUT = 60;
+
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+    private static final List<String> COMPILERS = Arrays.asList("cc", "c++", "gcc", "g++", "clang", "clang++");
+    private static final List<String> PATH_FLAGS = Arrays.asList("-o", "-MF", "-I", "-isystem", "-iquote", "-include");
+    private static final List<String> VALUE_FLAGS = Arrays.asList("-MT", "-MQ", "-D", "-U");
+    private static final List<String> LANGUAGES = Arrays.asList("c", "c++", "c-header", "c++-header");
+    private static final Pattern FLAG = Pattern.compile("-(c|w|MD|MMD|MP|pthread|pedantic|pedantic-errors|O[0-3gsz]?|Ofast"
+            + "|g[0-3]?|ggdb[0-3]?|gdwarf(-[0-9])?|std=[\\w+]+|W[\\w=+-]*|m[\\w=.+-]*|f(?!plugin)[\\w=.+-]*)");
+
+    private final InetSocketAddress address;
+    private final Path workDir;
+    private final int threads;
+    private final Semaphore slots;
+    private final String token;
+    private final AtomicLong jobs = new AtomicLong();
+    private final SecureRandom random = new SecureRandom();
+
+    public Worker(InetSocketAddress address, Path workDir, int slots, String token) {
+        this.address = address;
+        this.workDir = workDir;
+        this.threads = Math.max(1, slots) * 2;
+        this.slots = new Semaphore(Math.max(1, slots));
+        this.token = token == null || token.isEmpty() ? null : token;
+    }
+
+    public static String getToken() {
+        return System.getenv(TOKEN_ENV);
+    }
+
+    public static InetSocketAddress parseAddress(String address) {
+        int index = address.lastIndexOf(':');
+        if (index < 0) return new InetSocketAddress(address, DEFAULT_PORT);
+        String host = address.substring(0, index);
+        return new InetSocketAddress(host.isEmpty() ? InetAddress.getLoopbackAddress().getHostAddress() : host,
+                Integer.parseInt(address.substring(index + 1)));
+    }
+
+    public void run() throws IOException {
+        try (ServerSocket server = open()) {
+            System.out.println("Worker listening on " + server.getLocalSocketAddress() + " with " + slots.availablePermits() + " slots");
+            serve(server);
+        }
+    }
+
+    public ServerSocket open() throws IOException {
+        if (token == null) {
+            throw new IllegalStateException("Set " + TOKEN_ENV + " to accept jobs on " + address.getHostString());
+        }
+        Files.createDirectories(workDir.resolve("blobs"));
+        delete(workDir.resolve("jobs"));
+        Files.createDirectories(workDir.resolve("jobs"));
+        ServerSocket server = new ServerSocket();
+        try {
+            server.bind(address);
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        return server;
+    }
+
+    public void serve(ServerSocket server) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            while (!server.isClosed()) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketException e) {
+                    if (server.isClosed()) return;
+                    throw e;
+                }
+                socket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(READ_TIMEOUT));
+                executor.execute(() -> handle(socket));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            byte[] nonce = new byte[16];
+            random.nextBytes(nonce);
+            String challenge = FileUtils.toHex(nonce);
+            out.writeUTF(PROTOCOL);
+            out.writeUTF(challenge);
+            out.flush();
+            if (!COMPILE.equals(in.readUTF())) {
+                out.writeUTF(ERROR);
+                out.writeUTF("Unsupported request");
+                return;
+            }
+            String response = in.readUTF();
+            if (!MessageDigest.isEqual(sign(token, challenge).getBytes(StandardCharsets.UTF_8),
+                    response.getBytes(StandardCharsets.UTF_8))) {
+                out.writeUTF(ERROR);
+                out.writeUTF("Unauthorized");
+                return;
+            }
+            if (!slots.tryAcquire()) {
+                out.writeUTF(BUSY);
+                return;
+            }
+            try {
+                compile(in, out);
+            } finally {
+                slots.release();
+            }
+        } catch (IOException e) {
+            System.out.println("Worker connection failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    static String sign(String token, String challenge) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(token.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return FileUtils.toHex(mac.doFinal(challenge.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void compile(DataInputStream in, DataOutputStream out) throws IOException, InterruptedException {
+        List<String> command = readList(in);
+        List<String> outputs = readList(in);
+        Map<String, String> inputs = new LinkedHashMap<>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            inputs.put(in.readUTF(), in.readUTF());
+        }
+
+        Path job = workDir.resolve("jobs").resolve(Long.toString(jobs.incrementAndGet()));
+        try {
+            String error = validate(command, outputs, inputs, job);
+            if (error != null) {
+                out.writeUTF(ERROR);
+                out.writeUTF(error);
+                return;
+            }
+
+            List<String> missing = new ArrayList<>();
+            for (String hash : inputs.values()) {
+                if (!missing.contains(hash) && Files.notExists(getBlob(hash))) missing.add(hash);
+            }
+            out.writeUTF(NEED);
+            writeList(out, missing);
+            out.flush();
+            for (int i = 0; i < missing.size(); i++) {
+                receiveBlob(in, missing);
+            }
+
+            for (Map.Entry<String, String> input : inputs.entrySet()) {
+                Path file = job.resolve(input.getKey());
+                Files.createDirectories(file.getParent());
+                try {
+                    Files.createLink(file, getBlob(input.getValue()));
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(getBlob(input.getValue()), file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            for (String output : outputs) {
+                Files.createDirectories(job.resolve(output).getParent());
+            }
+
+            Path log = Files.createTempFile(workDir.resolve("jobs"), "job", ".log");
+            int exitCode;
+            try {
+                Process process = new ProcessBuilder(command).directory(job.toFile())
+                        .redirectErrorStream(true).redirectOutput(log.toFile()).start();
+                process.getOutputStream().close();
+                while (!process.waitFor(HEARTBEAT, TimeUnit.SECONDS)) {
+                    out.writeUTF(RUNNING);
+                    out.flush();
+                }
+                exitCode = process.exitValue();
+
+                out.writeUTF(DONE);
+                out.writeInt(exitCode);
+                out.writeInt((int) Files.size(log));
+                Files.copy(log, out);
+            } finally {
+                Files.deleteIfExists(log);
+            }
+            for (String output : outputs) {
+                Path file = job.resolve(output);
+                if (exitCode != 0 || Files.notExists(file)) {
+                    out.writeLong(-1);
+                    continue;
+                }
+                out.writeLong(Files.size(file));
+                Files.copy(file, out);
+            }
+        } finally {
+            out.flush();
+            delete(job);
+        }
+    }
+
+    private void receiveBlob(DataInputStream in, List<String> missing) throws IOException {
+        String hash = in.readUTF();
+        if (!missing.contains(hash)) throw new IOException("Unexpected blob " + hash);
+        long size = in.readLong();
+        Path blob = getBlob(hash);
+        Files.createDirectories(blob.getParent());
+        Path temp = FileUtils.getUniqueTempFile(blob);
+        MessageDigest digest = FileUtils.newDigest();
+        try (OutputStream file = Files.newOutputStream(temp)) {
+            byte[] buffer = new byte[8192];
+            while (size > 0) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, size));
+                if (n < 0) throw new IOException("Unexpected end of blob " + hash);
+                digest.update(buffer, 0, n);
+                file.write(buffer, 0, n);
+                size -= n;
+            }
+        }
+        if (!FileUtils.toHex(digest.digest()).equals(hash)) {
+            Files.deleteIfExists(temp);
+            throw new IOException("Corrupted blob " + hash);
+        }
+        try {
+            Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path getBlob(String hash) {
+        return workDir.resolve("blobs").resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    static String validate(List<String> command, List<String> outputs, Map<String, String> inputs, Path job) {
+        if (command.isEmpty() || !COMPILERS.contains(command.get(0))) {
+            return "Unsupported compiler " + (command.isEmpty() ? "" : command.get(0));
+        }
+        for (int i = 1; i < command.size(); i++) {
+            String argument = command.get(i);
+            if (!isPlainValue(argument)) return "Unsafe path in argument " + argument;
+            if (PATH_FLAGS.contains(argument) || VALUE_FLAGS.contains(argument) || argument.equals("-x")) {
+                if (++i >= command.size()) return "Missing value for " + argument;
+                String value = command.get(i);
+                boolean valid = argument.equals("-x") ? LANGUAGES.contains(value)
+                        : PATH_FLAGS.contains(argument) ? isInside(value, job) : isPlainValue(value);
+                if (!valid) return "Unsupported value for " + argument + " " + value;
+            } else if (argument.startsWith("-isystem") || argument.startsWith("-iquote")) {
+                if (!isInside(argument.substring(argument.startsWith("-isystem") ? 8 : 7), job)) return "Path outside the job directory " + argument;
+            } else if (argument.startsWith("-I")) {
+                if (!isInside(argument.substring(2), job)) return "Path outside the job directory " + argument;
+            } else if (argument.startsWith("-D") || argument.startsWith("-U")) {
+                if (!isPlainValue(argument.substring(2))) return "Unsafe path in argument " + argument;
+            } else if (argument.startsWith("-")) {
+                if (!FLAG.matcher(argument).matches()) return "Unsupported argument " + argument;
+            } else if (!isInside(argument, job)) {
+                return "Path outside the job directory " + argument;
+            }
+        }
+        for (String hash : inputs.values()) {
+            if (!HASH.matcher(hash).matches()) return "Invalid hash " + hash;
+        }
+        List<String> paths = new ArrayList<>(outputs);
+        paths.addAll(inputs.keySet());
+        for (String path : paths) {
+            if (!isInside(path, job)) return "Path outside the job directory " + path;
+        }
+        return null;
+    }
+
+    private static boolean isInside(String path, Path job) {
+        if (path.isEmpty() || !isPlainValue(path)) return false;
+        try {
+            Path file = Paths.get(path);
+            return !file.isAbsolute() && job.resolve(file).normalize().startsWith(job);
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    private static boolean isPlainValue(String value) {
+        if (value.startsWith("@")) return false;
+        for (String part : value.split("[=:,;\\s\"']")) {
+            if (part.startsWith("/") || part.startsWith("~") || part.startsWith("\\")) return false;
+            for (String name : part.split("[/\\\\]")) {
+                if (name.equals("..")) return false;
+            }
+        }
+        return true;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        if (Files.notExists(dir)) return;
+        try (Stream<Path> stream = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) stream.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    static List<String> readList(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(in.readUTF());
+        }
+        return values;
+    }
+
+    static void writeList(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.mouse0w0.mike;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WorkerClient implements RemoteExecutor {
+    private static final int CONNECT_TIMEOUT = 1000;
+    private static final int READ_TIMEOUT = Worker.HEARTBEAT * 3 * 1000;
+
+    private final List<InetSocketAddress> workers;
+    private final String token;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Map<Path, String> hashes = new ConcurrentHashMap<>();
+
+    public WorkerClient(List<InetSocketAddress> workers, String token) {
+        this.workers = workers;
+        this.token = token == null ? "" : token;
+    }
+
+    public static WorkerClient of(Options options) {
+        return of(options.getWorkers());
+    }
+
+    public static WorkerClient of(String workers) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String worker : workers.trim().split("[,\\s]+")) {
+            if (!worker.isEmpty()) addresses.add(Worker.parseAddress(worker));
+        }
+        return addresses.isEmpty() ? null : new WorkerClient(addresses, Worker.getToken());
+    }
+
+    @Override
+    public int execute(List<String> command, List<String> inputs, Path workDir, OutputStream log) throws IOException, InterruptedException {
+        List<String> outputs = new ArrayList<>();
+        for (int i = 0; i < command.size() - 1; i++) {
+            if (command.get(i).equals("-o") || command.get(i).equals("-MF")) outputs.add(command.get(i + 1));
+        }
+        if (!command.contains("-o")) return BUSY;
+
+        Map<String, Path> files = new LinkedHashMap<>();
+        for (String input : inputs) {
+            Path path = Paths.get(input);
+            if (path.isAbsolute()) continue;
+            if (path.normalize().startsWith("..")) return BUSY;
+            files.put(path.normalize().toString(), workDir.resolve(path));
+        }
+
+        int start = Math.floorMod(next.getAndIncrement(), workers.size());
+        for (int i = 0; i < workers.size(); i++) {
+            InetSocketAddress worker = workers.get((start + i) % workers.size());
+            try {
+                int exitCode = execute(worker, command, outputs, files, workDir, log);
+                if (exitCode != BUSY) Trace.annotate(Trace.WORKER, worker.getHostString() + ":" + worker.getPort());
+                if (exitCode != BUSY) return exitCode;
+            } catch (IOException e) {
+                // Try the next worker.
+            }
+        }
+        return BUSY;
+    }
+
+    private int execute(InetSocketAddress worker, List<String> command, List<String> outputs, Map<String, Path> files,
+                        Path workDir, OutputStream log) throws IOException {
+        Map<String, Path> blobs = new LinkedHashMap<>();
+        try (Socket socket = new Socket()) {
+            socket.connect(worker, CONNECT_TIMEOUT);
+            socket.setSoTimeout(READ_TIMEOUT);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            if (!Worker.PROTOCOL.equals(in.readUTF())) return BUSY;
+            String challenge = in.readUTF();
+            out.writeUTF(Worker.COMPILE);
+            out.writeUTF(token.isEmpty() ? "" : Worker.sign(token, challenge));
+            Worker.writeList(out, command);
+            Worker.writeList(out, outputs);
+            out.writeInt(files.size());
+            for (Map.Entry<String, Path> file : files.entrySet()) {
+                String hash = hash(file.getValue());
+                blobs.put(hash, file.getValue());
+                out.writeUTF(file.getKey());
+                out.writeUTF(hash);
+            }
+            out.flush();
+
+            String reply = in.readUTF();
+            if (!Worker.NEED.equals(reply)) return BUSY;
+            for (String hash : Worker.readList(in)) {
+                Path file = blobs.get(hash);
+                out.writeUTF(hash);
+                out.writeLong(Files.size(file));
+                Files.copy(file, out);
+            }
+            out.flush();
+
+            String status = in.readUTF();
+            while (Worker.RUNNING.equals(status)) {
+                status = in.readUTF();
+            }
+            if (!Worker.DONE.equals(status)) return BUSY;
+            int exitCode = in.readInt();
+            byte[] messages = new byte[in.readInt()];
+            in.readFully(messages);
+            for (String output : outputs) {
+                long size = in.readLong();
+                if (size < 0) continue;
+                Path file = workDir.resolve(output);
+                Files.createDirectories(file.toAbsolutePath().getParent());
+                Path temp = FileUtils.getUniqueTempFile(file);
+                try (OutputStream stream = Files.newOutputStream(temp)) {
+                    byte[] buffer = new byte[8192];
+                    while (size > 0) {
+                        int n = in.read(buffer, 0, (int) Math.min(buffer.length, size));
+                        if (n < 0) throw new IOException("Unexpected end of " + output);
+                        stream.write(buffer, 0, n);
+                        size -= n;
+                    }
+                }
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (log != null) log.write(messages);
+            return exitCode;
+        }
+    }
+
+    private String hash(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        String key = attributes.lastModifiedTime().toMillis() + ":" + attributes.size() + ":";
+        String cached = hashes.get(file);
+        if (cached != null && cached.startsWith(key)) return cached.substring(key.length());
+        String hash = FileUtils.toHex(FileUtils.newDigest().digest(Files.readAllBytes(file)));
+        hashes.put(file, key + hash);
+        return hash;
+    }
+}
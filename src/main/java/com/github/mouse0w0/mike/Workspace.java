@@ -0,0 +1,194 @@
+package com.github.mouse0w0.mike;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class Workspace {
+    public static final String WORKSPACE_MAKEFILE = "workspace.mk";
+    public static final String ROOT_PROJECT = ".root";
+
+    private static final String[] GOALS = {"all", "clean", "depend", "install", "uninstall", "package", "test"};
+
+    private final Path root;
+    private final String profile;
+    private final int parallelism;
+
+    public Workspace(Path root, String profile, int parallelism) {
+        this.root = root.toAbsolutePath().normalize();
+        this.profile = profile;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public List<Path> discover() throws IOException {
+        List<Path> projects = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(root) && dir.getFileName().toString().startsWith(".")) return FileVisitResult.SKIP_SUBTREE;
+                if (Files.exists(dir.resolve(Fingerprint.FINGERPRINT_FILE))) return FileVisitResult.SKIP_SUBTREE;
+                if (Files.isRegularFile(dir.resolve(Project.MIKEFILE))) projects.add(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(projects);
+        return projects;
+    }
+
+    public boolean generate() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        System.out.println("Discovering projects at " + root);
+        List<Path> projects = discover();
+        if (projects.isEmpty()) {
+            System.out.println("No found " + Project.MIKEFILE + " under " + root + ", stop generating");
+            return false;
+        }
+        System.out.println("Generating " + projects.size() + " projects with " + parallelism + " threads");
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        List<Result> results;
+        try {
+            results = pool.submit(() -> projects.parallelStream().map(this::generate).collect(Collectors.toList())).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Cannot generate workspace", e.getCause());
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        List<Result> succeeded = new ArrayList<>();
+        for (Result result : results) {
+            String name = getName(result.dir);
+            long millis = TimeUnit.NANOSECONDS.toMillis(result.nanos);
+            if (result.project != null) {
+                succeeded.add(result);
+                System.out.println(name + ": " + result.getStatus() + " (" + millis + " ms)");
+            } else {
+                System.out.println(name + ": failed, " + result.error + " (" + millis + " ms)");
+                for (String line : result.output.split("\n")) {
+                    if (!line.isEmpty()) System.out.println("    " + line);
+                }
+            }
+        }
+
+        Path makefile = root.resolve(Files.exists(root.resolve(Project.MIKEFILE)) ? WORKSPACE_MAKEFILE : MakefileBackend.MAKEFILE);
+        StringWriter buffer = new StringWriter();
+        generateMakefile(succeeded, new PrintWriter(buffer));
+        if (FileUtils.writeIfChanged(makefile, buffer.toString().getBytes(StandardCharsets.UTF_8))) {
+            System.out.println("Generating " + root.relativize(makefile) + " successfully");
+        } else {
+            System.out.println(root.relativize(makefile) + " is unchanged");
+        }
+
+        int failed = results.size() - succeeded.size();
+        System.out.println("Generated " + succeeded.size() + " projects in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                + " ms" + (failed == 0 ? "" : ", " + failed + " failed"));
+        return failed == 0;
+    }
+
+    private Result generate(Path dir) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long start = System.nanoTime();
+        Project project = null;
+        String error = null;
+        try (PrintStream out = new PrintStream(output, true)) {
+            project = Mike.generate(dir, profile, out);
+            if (project == null) error = "no " + Project.MIKEFILE;
+        } catch (RuntimeException e) {
+            project = null;
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        return new Result(dir, project, output.toString(), error, System.nanoTime() - start);
+    }
+
+    private void generateMakefile(List<Result> results, PrintWriter writer) {
+        writer.println("SHELL = /bin/bash");
+        writer.println();
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println("# OPTIONS");
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println("MIKE = mike");
+        writer.println("NINJA = ninja");
+        writer.println();
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println("# TASKS");
+        writer.println("# --------------------------------------------------------------------------- ");
+        for (String goal : GOALS) {
+            writer.print(goal + ":");
+            for (Result result : results) {
+                if (hasGoal(result.project, goal)) writer.print(" " + getTaskPrefix(result.dir) + "/" + goal);
+            }
+            writer.println();
+            writer.println(".PHONY: " + goal);
+            writer.println();
+        }
+        writer.println("# --------------------------------------------------------------------------- ");
+        writer.println("# PROJECTS");
+        writer.println("# --------------------------------------------------------------------------- ");
+        for (Result result : results) {
+            String name = getTaskPrefix(result.dir);
+            boolean ninja = result.project.getOptions().getBackend().equals("ninja");
+            writer.println(name + "/%: FORCE");
+            writer.println("\t+" + (ninja ? "$(NINJA)" : "$(MAKE)") + " -C " + getName(result.dir) + " " + (ninja ? "" : "MIKE=$(MIKE) ") + "$*");
+            writer.println();
+        }
+        writer.println("FORCE:");
+        writer.println(".PHONY: FORCE");
+    }
+
+    private static boolean hasGoal(Project project, String goal) {
+        if (goal.equals("test")) return !project.getTests().isEmpty();
+        if (goal.equals("depend")) return !project.getOptions().getBackend().equals("ninja");
+        return true;
+    }
+
+    private String getName(Path dir) {
+        String name = root.relativize(dir).toString().replace('\\', '/');
+        return name.isEmpty() ? "." : name;
+    }
+
+    private String getTaskPrefix(Path dir) {
+        return dir.equals(root) ? ROOT_PROJECT : getName(dir);
+    }
+
+    private static class Result {
+        private final Path dir;
+        private final Project project;
+        private final String output;
+        private final String error;
+        private final long nanos;
+
+        private Result(Path dir, Project project, String output, String error, long nanos) {
+            this.dir = dir;
+            this.project = project;
+            this.output = output;
+            this.error = error;
+            this.nanos = nanos;
+        }
+
+        private String getStatus() {
+            String[] lines = output.trim().split("\n");
+            return lines[lines.length - 1];
+        }
+    }
+}
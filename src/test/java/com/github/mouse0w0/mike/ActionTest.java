@@ -0,0 +1,30 @@
+package com.github.mouse0w0.mike;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ActionTest {
+    @Test
+    void splitsLikeTheShell() {
+        assertEquals(Arrays.asList("g++", "-Wall", "-o", "a.o", "-c", "a.cpp"), Action.split("  g++ -Wall  -o a.o -c a.cpp "));
+        assertEquals(Arrays.asList("g++", "-DMSG=a b", "-c", "a.cpp"), Action.split("g++ -DMSG=\"a b\" -c a.cpp"));
+        assertEquals(Arrays.asList("g++", "-DMSG=\"a b\"", "-c", "a.cpp"), Action.split("g++ '-DMSG=\"a b\"' -c a.cpp"));
+        assertEquals(Arrays.asList("g++", "-DPATH=a b", ""), Action.split("g++ -DPATH=a\\ b \"\""));
+        assertEquals(Arrays.asList("g++", "-c", "a.cpp"), Action.split("g++ \\\n-c a.cpp"));
+    }
+
+    @Test
+    void refusesShellFeatures() {
+        assertNull(Action.split("g++ $CXXFLAGS -c a.cpp"));
+        assertNull(Action.split("g++ \"$HOME\" -c a.cpp"));
+        assertNull(Action.split("g++ -c *.cpp"));
+        assertNull(Action.split("g++ -c a.cpp && rm a.o"));
+        assertNull(Action.split("g++ -c a.cpp > log"));
+        assertNull(Action.split("g++ -c ~/a.cpp"));
+        assertNull(Action.split("g++ 'unterminated"));
+    }
+}
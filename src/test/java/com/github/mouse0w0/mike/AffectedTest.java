@@ -0,0 +1,70 @@
+package com.github.mouse0w0.mike;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AffectedTest {
+    private static final String CONFIG = "[targets.core]\nsources = [\"lib\"]\nstaticLibrary = true\n"
+            + "[targets.app]\nsources = [\"src\"]\nlibraries = [\"core\"]\n"
+            + "[targets.tool]\nsources = [\"tool\"]\nincludes = [\"shared\"]\n"
+            + "[tests.smoke]\ntarget = \"app\"\nexpect = \"ok\"\n";
+
+    @TempDir
+    Path root;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        write("lib/core.cpp", "int core() { return 0; }\n");
+        write("src/main.cpp", "int main() { return 0; }\n");
+        write("tool/tool.cpp", "#include <util.hpp>\nint main() { return util(); }\n");
+        write("shared/util.hpp", "inline int util() { return 0; }\n");
+    }
+
+    @Test
+    void followsSourcesHeadersAndDependents() throws IOException {
+        write(Project.MIKEFILE, CONFIG);
+        assertEquals(Arrays.asList("app/all", "core/all", "test/smoke"), getGoals("lib/core.cpp"));
+        assertEquals(Collections.singletonList("tool/all"), getGoals("shared/util.hpp"));
+        assertEquals(Arrays.asList("app/all", "test/smoke"), getGoals("src/added.cpp"));
+        assertEquals(Collections.emptyList(), getGoals("build/app/src/main.cpp.o", "README.md"));
+    }
+
+    @Test
+    void rebuildsEverythingWhenTheConfigChanges() throws IOException {
+        write(Project.MIKEFILE, CONFIG);
+        assertEquals(Arrays.asList("app/all", "core/all", "tool/all", "test/smoke"), getGoals(Project.MIKEFILE));
+    }
+
+    @Test
+    void usesTheNinjaTestGoal() throws IOException {
+        write(Project.MIKEFILE, "BACKEND = \"ninja\"\n" + CONFIG);
+        assertEquals(Arrays.asList("app/all", "core/all", "test"), getGoals("lib/core.cpp"));
+    }
+
+    private List<String> getGoals(String... files) throws IOException {
+        Project project = Project.parseProject(root);
+        List<Path> changes = new ArrayList<>();
+        for (String file : files) {
+            changes.add(root.resolve(file));
+        }
+        return new Affected(project, project.getOptions().getBuildDir()).getGoals(changes);
+    }
+
+    private void write(String file, String content) throws IOException {
+        Path path = root.resolve(file);
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
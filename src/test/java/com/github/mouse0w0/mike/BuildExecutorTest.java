@@ -0,0 +1,29 @@
+package com.github.mouse0w0.mike;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BuildExecutorTest {
+    @TempDir
+    Path root;
+
+    @Test
+    void alwaysRunsActionsWithoutOutputs() throws Exception {
+        Files.write(root.resolve("input.txt"), "x".getBytes(StandardCharsets.UTF_8));
+        List<Action> actions = Collections.singletonList(new Action("check", "echo run >> runs.txt",
+                Collections.singletonList("input.txt"), Collections.emptyList()));
+        assertTrue(new BuildExecutor(root, 1, null, null, null).execute(actions));
+        assertTrue(new BuildExecutor(root, 1, null, null, null).execute(actions));
+        assertEquals(Arrays.asList("run", "run"), Files.readAllLines(root.resolve("runs.txt"), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.mouse0w0.mike;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BuildGraphTest {
+    private static final String CONFIG = "[targets.core]\nsources = [\"lib\"]\nsharedLibrary = true\n"
+            + "[targets.app]\nsources = [\"src\"]\nlibraries = [\"core\"]\n";
+
+    @TempDir
+    Path root;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        write("lib/core.cpp", "int core() { return 1; }\n");
+        write("src/main.cpp", "int core();\nint main() { return core() == 1 ? 0 : 1; }\n");
+    }
+
+    @Test
+    void linksAgainstTheInterfaceStamp() throws IOException {
+        write(Project.MIKEFILE, CONFIG);
+        Project project = Project.parseProject(root);
+        Target core = project.getTarget("core");
+        String stamp = project.getInterfaceStamp(core);
+        BuildGraph graph = BuildGraph.create(project);
+
+        Action stampAction = null;
+        Action appLink = null;
+        for (Action action : graph.getActions()) {
+            if (Action.INTERFACE.equals(action.getCategory())) stampAction = action;
+            if (action.getOutputs().contains(project.getExecutable(project.getTarget("app")))) appLink = action;
+        }
+        assertNotNull(stampAction);
+        assertNotNull(appLink);
+        assertEquals(stamp, stampAction.getOutputs().get(0));
+        assertEquals(project.getSharedLibrary(core), stampAction.getInputs().get(0));
+        assertTrue(appLink.getInputs().contains(stamp));
+        assertFalse(appLink.getInputs().contains(project.getSharedLibrary(core)));
+        assertTrue(appLink.getDependencies().contains(stampAction));
+    }
+
+    @Test
+    void emitsInterfaceRules() throws IOException {
+        write(Project.MIKEFILE, CONFIG);
+        String makefile = generate(Project.parseProject(root));
+        assertTrue(makefile.contains("CORE_INTERFACE = $(BUILD_DIR)/core/core.so.interface\n"), makefile);
+        assertTrue(makefile.contains("$(CORE_INTERFACE): core.so\n"), makefile);
+        assertTrue(makefile.contains("APP_DEPENDS = $(BUILD_DIR)/core/core.so.interface\n"), makefile);
+
+        write(Project.MIKEFILE, "BACKEND = \"ninja\"\n" + CONFIG);
+        String ninja = generate(Project.parseProject(root));
+        assertTrue(ninja.contains("build build/core/core.so.interface: interface core.so\n"), ninja);
+        assertTrue(ninja.contains(": link build/app/src/main.cpp.o | build/core/core.so.interface\n"), ninja);
+    }
+
+    @Test
+    void relinksOnlyWhenExportsChange() throws Exception {
+        write(Project.MIKEFILE, "CXXFLAGS = \"-fPIC\"\n" + CONFIG);
+        Project project = Project.parseProject(root);
+        Path app = root.resolve(project.getExecutable(project.getTarget("app")));
+        assertTrue(build(project));
+        FileTime built = age();
+
+        write("lib/core.cpp", "int core() { return 1 + 0; }\nstatic int helper() { return 2; }\n");
+        assertTrue(build(project));
+        assertEquals(built, Files.getLastModifiedTime(app));
+
+        write("lib/core.cpp", "int core() { return 1; }\nint extra() { return 2; }\n");
+        assertTrue(build(project));
+        assertTrue(Files.getLastModifiedTime(app).compareTo(built) > 0);
+    }
+
+    private FileTime age() throws IOException {
+        FileTime time = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.setLastModifiedTime(file, time);
+            }
+        }
+        return time;
+    }
+
+    private boolean build(Project project) throws Exception {
+        BuildGraph graph = BuildGraph.create(project);
+        return new BuildExecutor(root, 2, null, null, null).execute(graph.getActions());
+    }
+
+    private static String generate(Project project) throws IOException {
+        StringWriter writer = new StringWriter();
+        Generator.generate(project, writer);
+        return writer.toString();
+    }
+
+    private void write(String file, String content) throws IOException {
+        Path path = root.resolve(file);
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.mouse0w0.mike;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeneratorTest {
+    @TempDir
+    Path root;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        write("mike.toml", "[targets.app]\nsources = [\"src\"]\nunity = true\nunityBatchSize = 2\npch = \"src/pch.hpp\"\n");
+        write("src/pch.hpp", "#include \"common.hpp\"\n");
+        write("src/common.hpp", "int common();\n");
+        write("src/a.cpp", "int a() { return 0; }\n");
+        write("src/b.cpp", "int b() { return 0; }\n");
+        write("src/main.cpp", "int main() { return 0; }\n");
+    }
+
+    @Test
+    void writerApisDoNotTouchTheDisk() throws IOException {
+        Project project = Project.parseProject(root);
+        StringWriter makefile = new StringWriter();
+        Generator.generate(project, makefile);
+        StringWriter commands = new StringWriter();
+        Generator.generateCompileCommands(project, commands);
+
+        assertFalse(Files.exists(root.resolve("build")));
+        assertTrue(makefile.toString().contains("build/_unity/app/unity_1.cpp"));
+        assertTrue(commands.toString().contains("-include build/_pch/app/pch.hpp"));
+    }
+
+    @Test
+    void prepareWritesGeneratedSources() throws IOException {
+        Project project = Project.parseProject(root);
+        Generator.prepare(project);
+        assertTrue(Files.exists(root.resolve("build/_unity/app/unity_0.cpp")));
+        assertTrue(Files.exists(root.resolve("build/_unity/app/unity_1.cpp")));
+        assertEquals(PrecompiledHeader.getContent(project, project.getTarget("app")), read("build/_pch/app/pch.hpp"));
+
+        write("mike.toml", "[targets.app]\nsources = [\"src\"]\nunity = true\nunityBatchSize = 8\npch = \"src/pch.hpp\"\n");
+        Generator.prepare(Project.parseProject(root));
+        assertTrue(Files.exists(root.resolve("build/_unity/app/unity_0.cpp")));
+        assertFalse(Files.exists(root.resolve("build/_unity/app/unity_1.cpp")));
+    }
+
+    @Test
+    void escapesNinjaTaskCommands() throws IOException {
+        write("mike.toml", "BACKEND = \"ninja\"\nBUILD_DIR = \"out$1\"\n[targets.app]\nsources = [\"src\"]\n");
+        StringWriter ninja = new StringWriter();
+        Generator.generate(Project.parseProject(root), ninja);
+        assertTrue(ninja.toString().contains("  cmd = rm -rf out$$1/app"), ninja.toString());
+        assertTrue(ninja.toString().contains("  cmd = $mike install --build-dir=out$$1 --install-dir=$install_dir app"));
+        assertFalse(ninja.toString().contains("out$1"));
+    }
+
+    @Test
+    void emitsTheSameBytesSeriallyAndInParallel() throws Exception {
+        StringBuilder config = new StringBuilder("[profiles.debug]\nCXXFLAGS = \"-g\"\n");
+        for (int i = 0; i < 100; i++) {
+            config.append("[targets.t").append(i).append("]\nsources = [\"src\"]\nexcludes = [\"src/main.cpp\"]\n")
+                    .append(i % 3 == 0 ? "staticLibrary = true\n" : "sharedLibrary = true\n")
+                    .append(i % 4 == 0 ? "unity = true\n" : "")
+                    .append(i > 0 ? "libraries = [\"t" + (i - 1) + "\"]\n" : "");
+        }
+        write("mike.toml", config.toString());
+        Project project = Project.parseProject(root);
+        String parallel = generate(project);
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            assertEquals(parallel, pool.submit(() -> generate(project)).get());
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(parallel, generate(Project.parseProject(root)));
+    }
+
+    @Test
+    void doesNotRegenerateWhenTheRootChanges() throws IOException {
+        write("mike.toml", "[targets.app]\nsources = [\".\"]\nexcludes = [\"build/**\"]\n[targets.lib]\nsources = [\"src\"]\n");
+        String makefile = generate(Project.parseProject(root));
+        assertTrue(makefile.contains("build/" + Fingerprint.FINGERPRINT_FILE + ": mike.toml src\n"), makefile);
+
+        write("mike.toml", "BACKEND = \"ninja\"\n[targets.app]\nsources = [\".\"]\nexcludes = [\"build/**\"]\n[targets.lib]\nsources = [\"src\"]\n");
+        String ninja = generate(Project.parseProject(root));
+        assertTrue(ninja.contains("build " + NinjaBackend.NINJA_FILE + ": mike mike.toml | src\n"), ninja);
+    }
+
+    @Test
+    void refreshesThePlanWhenAnIncludeChanges() throws IOException {
+        write("include/extra.hpp", "int extra();\n");
+        PrintStream out = new PrintStream(new ByteArrayOutputStream(), true, "UTF-8");
+        Mike.generate(root, null, out);
+        byte[] makefile = Files.readAllBytes(root.resolve("Makefile"));
+        assertFalse(read("build/" + Generator.PLAN_FILE).contains("include/extra.hpp"));
+
+        write("src/a.cpp", "#include \"../include/extra.hpp\"\nint a() { return 0; }\n");
+        Files.setLastModifiedTime(root.resolve("src/a.cpp"), FileTime.fromMillis(System.currentTimeMillis() + 2000));
+        Mike.generate(root, null, out);
+        assertArrayEquals(makefile, Files.readAllBytes(root.resolve("Makefile")));
+        assertTrue(read("build/" + Generator.PLAN_FILE).contains("\"include/extra.hpp\""));
+
+        write("src/a.cpp", "int a() { return 0; }\n");
+        Files.setLastModifiedTime(root.resolve("src/a.cpp"), FileTime.fromMillis(System.currentTimeMillis() + 4000));
+        assertFalse(Generator.generate(Project.parseProject(root)));
+        assertFalse(read("build/" + Generator.PLAN_FILE).contains("include/extra.hpp"));
+    }
+
+    private static String generate(Project project) throws IOException {
+        StringWriter writer = new StringWriter();
+        Generator.generate(project, writer);
+        return writer.toString();
+    }
+
+    private void write(String file, String content) throws IOException {
+        Path path = root.resolve(file);
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String read(String file) throws IOException {
+        return new String(Files.readAllBytes(root.resolve(file)), StandardCharsets.UTF_8);
+    }
+}
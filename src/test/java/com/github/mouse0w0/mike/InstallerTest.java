@@ -0,0 +1,99 @@
+package com.github.mouse0w0.mike;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InstallerTest {
+    @TempDir
+    Path root;
+
+    private Project project;
+    private Target target;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        write("mike.toml", "[targets.app]\nsources = [\"src\"]\n");
+        write("src/app.hpp", "int app();\n");
+        write("src/main.cpp", "int main() { return 0; }\n");
+        project = Project.parseProject(root);
+        target = project.getTarget("app");
+        write(project.getExecutable(target), "binary");
+    }
+
+    @Test
+    void copiesOnlyChangedFiles() throws IOException {
+        Installer installer = new Installer(project, "build", root.resolve("prefix"));
+        assertEquals("2 copied, 0 unchanged, 0 removed", installer.install(target));
+        assertEquals("0 copied, 2 unchanged, 0 removed", installer.install(target));
+
+        write(project.getExecutable(target), "binary 2");
+        assertEquals("1 copied, 1 unchanged, 0 removed", installer.install(target));
+        assertEquals("binary 2", read("prefix/bin/app"));
+
+        Files.write(root.resolve("prefix/bin/app"), "edited".getBytes(StandardCharsets.UTF_8));
+        assertEquals("1 copied, 1 unchanged, 0 removed", installer.install(target));
+        assertEquals("binary 2", read("prefix/bin/app"));
+    }
+
+    @Test
+    void removesFilesDroppedFromTheLayout() throws IOException {
+        Installer installer = new Installer(project, "build", root.resolve("prefix"));
+        installer.install(target);
+        assertTrue(Files.exists(root.resolve("prefix/include/app.hpp")));
+
+        Files.move(root.resolve("src/app.hpp"), root.resolve("src/lib.hpp"));
+        project = Project.parseProject(root);
+        target = project.getTarget("app");
+        installer = new Installer(project, "build", root.resolve("prefix"));
+        assertEquals("1 copied, 1 unchanged, 1 removed", installer.install(target));
+        assertFalse(Files.exists(root.resolve("prefix/include/app.hpp")));
+        assertTrue(Files.exists(root.resolve("prefix/include/lib.hpp")));
+    }
+
+    @Test
+    void keepsOtherInstallDirectories() throws IOException {
+        Installer first = new Installer(project, "build", root.resolve("a"));
+        Installer second = new Installer(project, "build", root.resolve("b"));
+        first.install(target);
+        assertEquals("2 copied, 0 unchanged, 0 removed", second.install(target));
+        assertTrue(Files.exists(root.resolve("a/bin/app")));
+        assertTrue(Files.exists(root.resolve("a/include/app.hpp")));
+
+        assertEquals("2 removed", second.uninstall(target));
+        assertFalse(Files.exists(root.resolve("b/bin/app")));
+        assertTrue(Files.exists(root.resolve("a/bin/app")));
+
+        assertEquals("2 removed", first.uninstall(target));
+        assertFalse(Files.exists(root.resolve("a/bin/app")));
+        assertFalse(Files.exists(root.resolve("build/app/" + Installer.MANIFEST_FILE)));
+    }
+
+    @Test
+    void refusesToUninstallWithoutAManifest() throws IOException {
+        write("prefix/bin/app", "mine");
+        Installer installer = new Installer(project, "build", root.resolve("prefix"));
+        assertThrows(IllegalStateException.class, () -> installer.uninstall(target));
+        assertTrue(Files.exists(root.resolve("prefix/bin/app")));
+    }
+
+    private void write(String file, String content) throws IOException {
+        Path path = root.resolve(file);
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String read(String file) throws IOException {
+        return new String(Files.readAllBytes(root.resolve(file)), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.mouse0w0.mike;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ObjectCacheTest {
+    private static final String COMPILER = "#!/bin/sh\n"
+            + "while [ $# -gt 0 ]; do\n"
+            + "  case \"$1\" in\n"
+            + "    -o) out=$2; shift ;;\n"
+            + "    -E) mode=E ;;\n"
+            + "    -c) mode=c ;;\n"
+            + "    *) src=$1 ;;\n"
+            + "  esac\n"
+            + "  shift\n"
+            + "done\n"
+            + "if [ \"$mode\" = E ]; then cat \"$src\"; else echo \"$src\" >> compiled.log; cp \"$src\" \"$out\"; fi\n";
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Path compiler = dir.resolve("cc.sh");
+        Files.write(compiler, COMPILER.getBytes(StandardCharsets.UTF_8));
+        compiler.toFile().setExecutable(true);
+    }
+
+    @Test
+    void missesThenHits() throws Exception {
+        ObjectCache cache = new ObjectCache(dir.resolve("cache"), 1 << 20);
+        write("a.c", "int a;");
+
+        assertEquals(0, compile(cache, "a.c", "a.o"));
+        assertEquals(0, compile(cache, "a.c", "b.o"));
+        assertArrayEquals(Files.readAllBytes(dir.resolve("a.o")), Files.readAllBytes(dir.resolve("b.o")));
+        assertEquals(1, getCompiled());
+
+        write("a.c", "int b;");
+        assertEquals(0, compile(cache, "a.c", "a.o"));
+        assertEquals(2, getCompiled());
+
+        Properties stats = cache.getStats();
+        assertEquals("1", stats.getProperty("hits"));
+        assertEquals("2", stats.getProperty("misses"));
+    }
+
+    @Test
+    void countsEveryEvictedEntry() throws Exception {
+        ObjectCache cache = new ObjectCache(dir.resolve("cache"), 250);
+        write("a.c", pad('a', 100));
+        write("b.c", pad('b', 100));
+        write("c.c", pad('c', 300));
+
+        assertEquals(0, compile(cache, "a.c", "a.o"));
+        Thread.sleep(20);
+        assertEquals(0, compile(cache, "b.c", "b.o"));
+        Thread.sleep(20);
+        assertEquals(0, compile(cache, "c.c", "c.o"));
+
+        Properties stats = cache.getStats();
+        assertEquals("3", stats.getProperty("evictions"));
+        assertEquals("0", stats.getProperty("size"));
+
+        assertEquals(0, compile(cache, "a.c", "a.o"));
+        assertEquals(4, getCompiled());
+    }
+
+    @Test
+    void forwardsCompilerErrors() throws Exception {
+        ObjectCache cache = new ObjectCache(dir.resolve("cache"), 1 << 20);
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        List<String> command = Arrays.asList(dir.resolve("cc.sh").toString(), "-o", "missing.o", "-c", "missing.c");
+        assertEquals(1, cache.compile(command, Collections.emptyList(), null, dir, log));
+        assertEquals("0", cache.getStats().getProperty("hits", "0"));
+    }
+
+    private int compile(ObjectCache cache, String source, String output) throws Exception {
+        List<String> command = Arrays.asList(dir.resolve("cc.sh").toString(), "-o", output, "-c", source);
+        return cache.compile(command, dir, null);
+    }
+
+    private void write(String file, String content) throws IOException {
+        Files.write(dir.resolve(file), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long getCompiled() throws IOException {
+        return Files.readAllLines(dir.resolve("compiled.log")).size();
+    }
+
+    private static String pad(char c, int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
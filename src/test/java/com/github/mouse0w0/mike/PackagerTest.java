@@ -0,0 +1,85 @@
+package com.github.mouse0w0.mike;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PackagerTest {
+    @TempDir
+    Path root;
+
+    private Project project;
+    private Target target;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        write("mike.toml", "[targets.app]\nsources = [\"src\"]\n".getBytes(StandardCharsets.UTF_8));
+        write("src/app.hpp", "int app();\n".getBytes(StandardCharsets.UTF_8));
+        write("src/main.cpp", "int main() { return 0; }\n".getBytes(StandardCharsets.UTF_8));
+        project = Project.parseProject(root);
+        target = project.getTarget("app");
+        byte[] binary = new byte[3 << 20];
+        new Random(42).nextBytes(binary);
+        write(project.getExecutable(target), binary);
+    }
+
+    @Test
+    void producesReproducibleArchives() throws IOException {
+        Path archive = root.resolve(Packager.getArchive(project, target));
+        assertTrue(new Packager(project, "build", 1).pack(target));
+        byte[] serial = Files.readAllBytes(archive);
+
+        Files.delete(archive);
+        Files.setLastModifiedTime(root.resolve(project.getExecutable(target)), FileTime.fromMillis(0));
+        Files.setLastModifiedTime(root.resolve("src/app.hpp"), FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        assertTrue(new Packager(project, "build", 4).pack(target));
+        assertArrayEquals(serial, Files.readAllBytes(archive));
+        assertArrayEquals(new byte[]{0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff}, Arrays.copyOf(serial, 10));
+
+        byte[] tar = gunzip(archive);
+        assertEquals(0, tar.length % 512);
+        assertTrue(new String(tar, StandardCharsets.ISO_8859_1).contains("app.hpp"));
+    }
+
+    @Test
+    void skipsUnchangedArchives() throws IOException {
+        Packager packager = new Packager(project, "build", 2);
+        assertTrue(packager.pack(target));
+        assertFalse(packager.pack(target));
+        write("src/app.hpp", "int app(int);\n".getBytes(StandardCharsets.UTF_8));
+        assertTrue(packager.pack(target));
+    }
+
+    private void write(String file, byte[] content) throws IOException {
+        Path path = root.resolve(file);
+        Files.createDirectories(path.getParent());
+        Files.write(path, content);
+    }
+
+    private static byte[] gunzip(Path file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+}
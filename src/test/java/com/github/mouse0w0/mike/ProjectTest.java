@@ -0,0 +1,65 @@
+package com.github.mouse0w0.mike;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProjectTest {
+    @TempDir
+    Path root;
+
+    @Test
+    void resolvesDiamondDependencies() throws IOException {
+        write("[targets.app]\nsources = [\"app\"]\nlibraries = [\"a\", \"b\", \"m\"]\n"
+                + "[targets.a]\nsources = [\"a\"]\nincludes = [\"a\"]\nlibraries = [\"c\"]\nstaticLibrary = true\n"
+                + "[targets.b]\nsources = [\"b\"]\nincludes = [\"b\"]\nlibraries = [\"c\"]\nstaticLibrary = true\n"
+                + "[targets.c]\nsources = [\"c\"]\nincludes = [\"c\"]\nstaticLibrary = true\n");
+        Project project = Project.parseProject(root);
+        Target app = project.getTarget("app");
+        assertEquals(Arrays.asList("a", "c", "b"), getNames(project.getTransitiveDependencies(app)));
+        assertEquals(Arrays.asList("a", "c", "b"), project.getIncludes(app));
+        assertEquals(Arrays.asList("a", "b", "c", "m"), project.getLinkLibraries(app, Target::getName));
+    }
+
+    @Test
+    @Timeout(10)
+    void resolvesDeepDiamondsInLinearTime() throws IOException {
+        StringBuilder config = new StringBuilder("[targets.l0a]\nsources = [\"src\"]\nstaticLibrary = true\n"
+                + "[targets.l0b]\nsources = [\"src\"]\nstaticLibrary = true\n");
+        int depth = 40;
+        for (int i = 1; i <= depth; i++) {
+            for (String side : Arrays.asList("a", "b")) {
+                config.append("[targets.l").append(i).append(side).append("]\nsources = [\"src\"]\nstaticLibrary = true\n")
+                        .append("includes = [\"inc").append(i).append(side).append("\"]\n")
+                        .append("libraries = [\"l").append(i - 1).append("a\", \"l").append(i - 1).append("b\"]\n");
+            }
+        }
+        write(config.toString());
+        Project project = Project.parseProject(root);
+        Target top = project.getTarget("l" + depth + "a");
+        assertEquals(depth * 2, project.getTransitiveDependencies(top).size());
+        assertEquals(depth * 2 - 1, project.getIncludes(top).size());
+        assertEquals(depth * 2, project.getLinkLibraries(top, Target::getName).size());
+    }
+
+    private void write(String config) throws IOException {
+        Files.write(root.resolve(Project.MIKEFILE), config.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> getNames(List<Target> targets) {
+        String[] names = new String[targets.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = targets.get(i).getName();
+        }
+        return Arrays.asList(names);
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.mouse0w0.mike;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotTest {
+    private static final String CONFIG = "CXXFLAGS = \"-Wall -O2\"\n"
+            + "NM = \"llvm-nm\"\n"
+            + "\n"
+            + "[profiles.debug]\n"
+            + "CXXFLAGS = \"-g\"\n"
+            + "\n"
+            + "[scripts]\n"
+            + "hello = \"echo hello\"\n"
+            + "\n"
+            + "[targets.core]\n"
+            + "sources = [\"lib\"]\n"
+            + "staticLibrary = true\n"
+            + "sharedLibrary = true\n"
+            + "\n"
+            + "[targets.app]\n"
+            + "sources = [\"src\"]\n"
+            + "libraries = [\"core\"]\n"
+            + "\n"
+            + "[tests.smoke]\n"
+            + "target = \"app\"\n"
+            + "expect = \"ok\"\n";
+
+    @TempDir
+    Path root;
+
+    @Test
+    void roundTripsTheProjectModel() throws IOException {
+        setUp(CONFIG);
+        Project parsed = Snapshot.loadProject(root, "debug");
+        assertTrue(Files.exists(root.resolve("build/" + Snapshot.SNAPSHOT_FILE)));
+        assertFalse(Files.exists(root.resolve(Snapshot.SNAPSHOT_FILE)));
+
+        Project restored = Snapshot.loadProject(root, "debug");
+        assertEquals(generate(parsed), generate(restored));
+        assertEquals("llvm-nm", restored.getOptions().getNm());
+        assertEquals("-g", restored.getOptions().getCxxflags());
+        assertEquals(parsed.getBaseOptions().toMap(), restored.getBaseOptions().toMap());
+        assertEquals(1, restored.getTests().size());
+        assertEquals("hello", restored.getScripts().get(0).getName());
+    }
+
+    @Test
+    void followsConfigChanges() throws IOException {
+        setUp(CONFIG);
+        Snapshot.loadProject(root, null);
+        Files.write(root.resolve(Project.MIKEFILE), CONFIG.replace("llvm-nm", "gcc-nm").getBytes(StandardCharsets.UTF_8));
+        assertEquals("gcc-nm", Snapshot.loadProject(root, null).getOptions().getNm());
+    }
+
+    @Test
+    void ignoresSnapshotsFromAnotherSchema() throws IOException {
+        setUp(CONFIG);
+        byte[] config = CONFIG.getBytes(StandardCharsets.UTF_8);
+        Path file = root.resolve("build/" + Snapshot.SNAPSHOT_FILE);
+        Files.createDirectories(file.getParent());
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            out.writeInt(0x4d494b53);
+            out.writeUTF("1/null/BUILD_DIR");
+            out.writeInt(config.length);
+            out.write(config);
+        }
+        assertEquals("llvm-nm", Snapshot.loadProject(root, null).getOptions().getNm());
+        assertEquals("llvm-nm", Snapshot.loadProject(root, null).getOptions().getNm());
+    }
+
+    @Test
+    void storesSnapshotInCustomBuildDir() throws IOException {
+        setUp("BUILD_DIR = 'out' # custom\n" + CONFIG);
+        Snapshot.loadProject(root, null);
+        assertTrue(Files.exists(root.resolve("out/" + Snapshot.SNAPSHOT_FILE)));
+        assertFalse(Files.exists(root.resolve("build")));
+    }
+
+    private void setUp(String config) throws IOException {
+        Files.write(root.resolve(Project.MIKEFILE), config.getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(root.resolve("lib"));
+        Files.createDirectories(root.resolve("src"));
+        Files.write(root.resolve("lib/core.cpp"), "int core() { return 0; }\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(root.resolve("src/main.cpp"), "int main() { return 0; }\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String generate(Project project) throws IOException {
+        StringWriter writer = new StringWriter();
+        Generator.generate(project, writer);
+        return writer.toString();
+    }
+}
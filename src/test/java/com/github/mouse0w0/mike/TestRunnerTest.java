@@ -0,0 +1,105 @@
+package com.github.mouse0w0.mike;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestRunnerTest {
+    @TempDir
+    Path root;
+
+    @Test
+    void reportsBrokenTestsWithoutAbortingTheRun() throws Exception {
+        script("ok.sh", "read line\necho \"$line\"\n");
+        setUp("[tests.\"bad/name\"]\ntarget = \"ok.sh\"\nexpect = \"x\"\n"
+                + "[tests.good]\ntarget = \"ok.sh\"\ninput = \"hello\"\nexpect = \"hello\"\n");
+        Project project = Project.parseProject(root);
+        Path report = root.resolve("report.xml");
+        assertFalse(new TestRunner(project, Paths.get("build"), 2, 10).run(project.getTests(), report));
+        String xml = read(report);
+        assertTrue(xml.contains("tests=\"2\" failures=\"0\" errors=\"1\" skipped=\"0\""), xml);
+        assertTrue(xml.contains("<testcase name=\"good\" classname=\"ok.sh\""), xml);
+    }
+
+    @Test
+    void reportsCachedTestsAsSkipped() throws Exception {
+        script("ok.sh", "echo ok\n");
+        setUp("[tests.first]\ntarget = \"ok.sh\"\nexpect = \"ok\"\n");
+        Project project = Project.parseProject(root);
+        Path report = root.resolve("report.xml");
+        assertTrue(new TestRunner(project, Paths.get("build"), 1, 10).run(project.getTests(), report));
+        assertTrue(read(report).contains("skipped=\"0\""));
+        assertTrue(new TestRunner(project, Paths.get("build"), 1, 10).run(project.getTests(), report));
+        String xml = read(report);
+        assertTrue(xml.contains("tests=\"1\" failures=\"0\" errors=\"0\" skipped=\"1\""), xml);
+        assertTrue(xml.contains("<skipped message="), xml);
+    }
+
+    @Test
+    void killsChildProcessesOnTimeout() throws Exception {
+        script("slow.sh", "(sleep 2; echo late > late.txt) &\nsleep 5 | cat\n");
+        setUp("[tests.slow]\ntarget = \"slow.sh\"\nexpect = \"\"\ntimeout = 1\n");
+        Project project = Project.parseProject(root);
+        long start = System.nanoTime();
+        assertFalse(new TestRunner(project, Paths.get("build"), 1, 10).run(project.getTests(), root.resolve("report.xml")));
+        assertTrue(System.nanoTime() - start < 4_000_000_000L);
+        Thread.sleep(2500);
+        assertFalse(Files.exists(root.resolve("late.txt")));
+    }
+
+    @Test
+    void rerunsWhenALinkedSharedLibraryChanges() throws Exception {
+        write("lib/core.cpp", "int core() { return 1; }\n");
+        write("src/main.cpp", "#include <cstdio>\nint core();\nint main() { std::printf(\"%d\\n\", core()); return 0; }\n");
+        setUp("CXXFLAGS = \"-fPIC\"\nLDFLAGS = \"-Wl,-rpath,.\"\n"
+                + "[targets.core]\nsources = [\"lib\"]\nsharedLibrary = true\n"
+                + "[targets.app]\nsources = [\"src\"]\nlibraries = [\"core\"]\n"
+                + "[tests.value]\ntarget = \"app\"\nexpect = \"1\"\n");
+        Project project = Project.parseProject(root);
+        Path report = root.resolve("report.xml");
+        assertTrue(build(project));
+        assertTrue(new TestRunner(project, Paths.get("build"), 1, 10).run(project.getTests(), report));
+        assertTrue(new TestRunner(project, Paths.get("build"), 1, 10).run(project.getTests(), report));
+        assertTrue(read(report).contains("skipped=\"1\""));
+
+        byte[] executable = Files.readAllBytes(root.resolve(project.getExecutable(project.getTarget("app"))));
+        write("lib/core.cpp", "int core() { return 2; }\n");
+        assertTrue(build(project));
+        assertArrayEquals(executable, Files.readAllBytes(root.resolve(project.getExecutable(project.getTarget("app")))));
+        assertFalse(new TestRunner(project, Paths.get("build"), 1, 10).run(project.getTests(), report));
+        assertTrue(read(report).contains("failures=\"1\" errors=\"0\" skipped=\"0\""), read(report));
+    }
+
+    private boolean build(Project project) throws Exception {
+        return new BuildExecutor(root, 2, null, null, null).execute(BuildGraph.create(project).getActions());
+    }
+
+    private void write(String file, String content) throws IOException {
+        Path path = root.resolve(file);
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void setUp(String tests) throws IOException {
+        Files.write(root.resolve(Project.MIKEFILE), tests.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void script(String name, String content) throws IOException {
+        Path file = root.resolve(name);
+        Files.write(file, ("#!/bin/sh\n" + content).getBytes(StandardCharsets.UTF_8));
+        file.toFile().setExecutable(true);
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
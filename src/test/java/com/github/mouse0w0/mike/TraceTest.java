@@ -0,0 +1,33 @@
+package com.github.mouse0w0.mike;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class TraceTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void appendsOneEventPerSpan() throws IOException {
+        Trace trace = new Trace(dir.resolve("trace.events"));
+        trace.begin(Action.COMPILE, "a.o").end(0);
+        trace.begin(Action.LINK, "app").end(1);
+        assertEquals(2, Files.readAllLines(trace.getFile()).size());
+    }
+
+    @Test
+    void keepsGoingWhenTheTraceIsUnwritable() throws IOException {
+        Files.createFile(dir.resolve("file"));
+        Trace trace = new Trace(dir.resolve("file/trace.events"));
+        trace.begin(Action.COMPILE, "a.o").end(0);
+        trace.begin(Action.COMPILE, "b.o").end(0);
+        assertFalse(Files.exists(trace.getFile()));
+    }
+}
@@ -0,0 +1,157 @@
+package com.github.mouse0w0.mike;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class WorkerTest {
+    private static final Path JOB = Paths.get("/work/jobs/1");
+    private static final Map<String, String> NO_INPUTS = Collections.emptyMap();
+
+    @Test
+    void acceptsGeneratedCompileCommand() {
+        List<String> command = Arrays.asList("g++", "-Wall", "-O2", "-std=c++17", "-fPIC", "-DNAME=mike", "-Iinclude",
+                "-include", "include/pch.hpp", "-MMD", "-MT", "build/a.o", "-MF", "build/a.o.d", "-o", "build/a.o", "-c", "src/a.cpp");
+        assertNull(Worker.validate(command, Arrays.asList("build/a.o", "build/a.o.d"), NO_INPUTS, JOB));
+    }
+
+    @Test
+    void rejectsUnsafeArguments() {
+        List<List<String>> commands = Arrays.asList(
+                Arrays.asList("/tmp/g++", "-c", "a.cpp"),
+                Arrays.asList("g++", "-wrapper", "sh,-c,id", "-c", "a.cpp"),
+                Arrays.asList("g++", "-fplugin=evil.so", "-c", "a.cpp"),
+                Arrays.asList("g++", "-specs=evil.specs", "-c", "a.cpp"),
+                Arrays.asList("g++", "-Bevil", "-c", "a.cpp"),
+                Arrays.asList("g++", "@args", "-c", "a.cpp"),
+                Arrays.asList("g++", "-Wl,-rpath,x", "-c", "a.cpp"),
+                Arrays.asList("g++", "-o", "/tmp/a.o", "-c", "a.cpp"),
+                Arrays.asList("g++", "-MF", "../a.d", "-c", "a.cpp"),
+                Arrays.asList("g++", "-I/usr/include", "-c", "a.cpp"),
+                Arrays.asList("g++", "-include", "/etc/passwd", "-c", "a.cpp"),
+                Arrays.asList("g++", "-x", "assembler", "-c", "a.cpp"),
+                Arrays.asList("g++", "-ffile-prefix-map=/=x", "-c", "a.cpp"),
+                Arrays.asList("g++", "-c", "../a.cpp"),
+                Arrays.asList("g++", "-c", "a.cpp", "-o"));
+        for (List<String> command : commands) {
+            assertNotNull(Worker.validate(command, Collections.emptyList(), NO_INPUTS, JOB), command.toString());
+        }
+        assertNotNull(Worker.validate(Arrays.asList("g++", "-c", "a.cpp"), Collections.singletonList("../a.o"), NO_INPUTS, JOB));
+        assertNotNull(Worker.validate(Arrays.asList("g++", "-c", "a.cpp"), Collections.emptyList(),
+                Collections.singletonMap("a.cpp", "not-a-hash"), JOB));
+    }
+
+    @Test
+    void fallsBackLocallyOnlyWhenBusyOrUnreachable(@TempDir Path dir) throws Exception {
+        List<String> command = Arrays.asList("touch", "local");
+        Path local = dir.resolve("local");
+
+        assertEquals(0, RemoteExecutor.compile((c, i, w, l) -> RemoteExecutor.BUSY, command, Collections.emptyList(), dir, null));
+        assertTrue(Files.exists(local));
+        Files.delete(local);
+
+        assertEquals(0, RemoteExecutor.compile((c, i, w, l) -> {
+            throw new IOException("gone");
+        }, command, Collections.emptyList(), dir, null));
+        assertTrue(Files.exists(local));
+        Files.delete(local);
+
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        assertEquals(1, RemoteExecutor.compile((c, i, w, l) -> {
+            l.write("a.cpp:1: error".getBytes(StandardCharsets.UTF_8));
+            return 1;
+        }, command, Collections.emptyList(), dir, log));
+        assertFalse(Files.exists(local));
+        assertEquals("a.cpp:1: error", log.toString("UTF-8"));
+    }
+
+    @Test
+    void refusesToOpenWithoutToken(@TempDir Path dir) throws Exception {
+        Worker worker = new Worker(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), dir, 1, null);
+        assertThrows(IllegalStateException.class, worker::open);
+        assertFalse(Files.exists(dir.resolve("jobs")));
+    }
+
+    @Test
+    void compilesOnSeveralLocalWorkers(@TempDir Path dir) throws Exception {
+        assumeTrue(hasCompiler());
+        Files.write(dir.resolve("ok.cpp"), "int answer() { return 42; }\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("bad.cpp"), "int answer() { return }\n".getBytes(StandardCharsets.UTF_8));
+
+        List<ServerSocket> servers = new ArrayList<>();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        try {
+            for (int i = 0; i < 2; i++) {
+                Worker worker = new Worker(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                        dir.resolve("worker" + i), 1, "secret");
+                ServerSocket server = worker.open();
+                servers.add(server);
+                addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort()));
+                Thread thread = new Thread(() -> {
+                    try {
+                        worker.serve(server);
+                    } catch (IOException ignored) {
+                    }
+                });
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            WorkerClient client = new WorkerClient(addresses, "secret");
+            for (int i = 0; i < 2; i++) {
+                String object = "build/ok" + i + ".o";
+                assertEquals(0, client.execute(Arrays.asList("g++", "-o", object, "-c", "ok.cpp"),
+                        Collections.singletonList("ok.cpp"), dir, null));
+                assertTrue(Files.size(dir.resolve(object)) > 0);
+            }
+
+            ByteArrayOutputStream log = new ByteArrayOutputStream();
+            int exitCode = client.execute(Arrays.asList("g++", "-o", "build/bad.o", "-c", "bad.cpp"),
+                    Collections.singletonList("bad.cpp"), dir, log);
+            assertTrue(exitCode != 0 && exitCode != RemoteExecutor.BUSY);
+            assertTrue(log.toString("UTF-8").contains("bad.cpp"));
+            assertFalse(Files.exists(dir.resolve("build/bad.o")));
+
+            WorkerClient intruder = new WorkerClient(addresses, "wrong");
+            assertEquals(RemoteExecutor.BUSY, intruder.execute(Arrays.asList("g++", "-o", "build/x.o", "-c", "ok.cpp"),
+                    Collections.singletonList("ok.cpp"), dir, null));
+            assertEquals(RemoteExecutor.BUSY, client.execute(Arrays.asList("g++", "-fplugin=x.so", "-o", "build/x.o", "-c", "ok.cpp"),
+                    Collections.singletonList("ok.cpp"), dir, null));
+            assertFalse(Files.exists(dir.resolve("build/x.o")));
+        } finally {
+            for (ServerSocket server : servers) {
+                server.close();
+            }
+        }
+    }
+
+    private static boolean hasCompiler() {
+        try {
+            return new ProcessBuilder("g++", "--version").redirectErrorStream(true).start().waitFor() == 0;
+        } catch (IOException | InterruptedException e) {
+            return false;
+        }
+    }
+}